@@ -8,17 +8,21 @@ import java.io.OutputStreamWriter;
 
 import java.net.InetAddress;
 import java.net.Socket;
+import java.util.Arrays;
 
+import collecto.AlphaBetaStrategy;
 import collecto.Board;
 import collecto.ComputerPlayer;
+import collecto.Geometry;
 import collecto.HumanPlayer;
+import collecto.MctsStrategy;
+import collecto.Move;
 import collecto.NaiveStrategy;
 import collecto.Player;
 import collecto.SmartStrategy;
 
 import exceptions.ServerUnavailableException;
 
-import utils.Colors;
 import utils.Protocols;
 import utils.States;
 import utils.MessageHandler;
@@ -33,12 +37,21 @@ public class CollectoClient {
 	private int playerType;
 	private Player opponent;
 	private Board board;
+	private boolean seedEnabled; // The server sends the seed of the board in NEWGAME
+	private long seed;
 	
 	private States state = States.NEWIN;
 	
 	private String host;
 	private int port;
 	
+	/**
+	 * @return the seed of the board of the current game, if the server sends it (SEED extension)
+	 */
+	public long getSeed() {
+		return this.seed;
+	}
+	
 	public States getState() {
 		return this.state;
 	}
@@ -51,7 +64,8 @@ public class CollectoClient {
 	}
 	/**
 	 * player type: 1 for AI player using smart strategy, 
-	 * 2 for AI player using naive strategy, 3 for human player
+	 * 2 for AI player using naive strategy, 3 for human player,
+	 * 4 for AI player using alpha-beta search, 5 for AI player using Monte Carlo tree search
 	 */
 	public void setPlayerType(int type) {
 		this.playerType = type;
@@ -165,9 +179,12 @@ public class CollectoClient {
 	
 	/**
 	 * Closes the connection by closing the In- and OutputStreams, as 
-	 * well as the serverSocket.
+	 * well as the serverSocket, and stops the threads of the strategy of the player.
 	 */
 	public void closeConnection() {
+		if (this.player instanceof ComputerPlayer) {
+			((ComputerPlayer) this.player).getStrategy().close();
+		}
 		try {
 			this.in.close();
 			this.out.close();
@@ -187,6 +204,7 @@ public class CollectoClient {
 		String res = this.readLineFromServer();
 		if (res.startsWith(Protocols.HELLO + Protocols.TILDE)) {
 			this.state = States.SAYHELLO;
+			this.seedEnabled = Arrays.asList(res.split(Protocols.TILDE)).contains(Protocols.SEED);
 		}
 	}
 	
@@ -199,7 +217,10 @@ public class CollectoClient {
 		String res = this.readLineFromServer();
 		if (res.equals(Protocols.LOGIN)) {
 			String name = input.split(Protocols.TILDE)[1];
-			if (this.playerType == 1 || this.playerType == 2) {
+			if (this.player instanceof ComputerPlayer) {
+				((ComputerPlayer) this.player).getStrategy().close();
+			}
+			if (this.playerType == 1 || this.playerType == 2 || this.playerType == 4 || this.playerType == 5) {
 				this.player = new ComputerPlayer(name, this.playerType);
 			} else if (this.playerType == 3) {
 				this.player = new HumanPlayer(name);
@@ -263,6 +284,21 @@ public class CollectoClient {
 		MessageHandler.printMessage(this.readMultipleLinesFromServer());
 	}
 	
+	/**
+	 * @param move a packed move (see Move)
+	 * @return the MOVE message of the move: MOVE~<first push>[~second push]
+	 */
+	public String getMoveMessage(int move) {
+		return Protocols.MOVE + Protocols.TILDE + Move.toProtocolString(this.getGeometry(), move);
+	}
+
+	/**
+	 * @return the size of the board of the current game, moves are numbered for it
+	 */
+	public Geometry getGeometry() {
+		return this.board != null ? this.board.getGeometry() : Geometry.DEFAULT;
+	}
+	
 	/**
 	 * @param input MOVE~<first push>[~second push]
 	 * @throws ServerUnavailableException 
@@ -273,7 +309,7 @@ public class CollectoClient {
 
 		if (input.equals(res)) {
 			res = res.replace(Protocols.MOVE + Protocols.TILDE, "");
-			this.player.makeMove(this.board, res);
+			this.player.makeMove(this.board, Move.parse(this.getGeometry(), res));
 			MessageHandler.printMessage(this.board.toString());
 
 
@@ -282,10 +318,10 @@ public class CollectoClient {
 			if (res.startsWith(Protocols.MOVE + Protocols.TILDE)) {
 				MessageHandler.printMessage(this.opponent.getName() + ": " + res);
 				res = res.replace(Protocols.MOVE + Protocols.TILDE, "");
-				this.opponent.makeMove(this.board, res);
+				this.opponent.makeMove(this.board, Move.parse(this.getGeometry(), res));
 				MessageHandler.printMessage(this.board.toString());
 
-				if (this.board.gameOver()) {
+				if (!this.board.hasAnyLegalMove()) {
 					res = this.readLineFromServer();
 					MessageHandler.printMessage("Server: " + res);
 					if (res.startsWith(Protocols.GAMEOVER + Protocols.TILDE)) {
@@ -315,6 +351,10 @@ public class CollectoClient {
 				((ComputerPlayer) this.player).setStrategy(new SmartStrategy(this.player));
 			} else if (type == 2) {
 				((ComputerPlayer) this.player).setStrategy(new NaiveStrategy());
+			} else if (type == 4) {
+				((ComputerPlayer) this.player).setStrategy(new AlphaBetaStrategy(this.player));
+			} else if (type == 5) {
+				((ComputerPlayer) this.player).setStrategy(new MctsStrategy(this.player));
 			}
 			this.playerType = type;
 		}
@@ -322,7 +362,8 @@ public class CollectoClient {
 	
 	public void handleHint() {
 		if (this.state.equals(States.PLAYING)) {
-			MessageHandler.printMessage("Hint for move: " + new NaiveStrategy().determineMove(this.board));
+			MessageHandler.printMessage("Hint for move: " 
+					+ Move.toProtocolString(this.getGeometry(), new NaiveStrategy().determineMove(this.board)));
 		} else {
 			MessageHandler.printMessage(Protocols.ERROR + Protocols.TILDE + "Untimely HINT");
 		}
@@ -330,26 +371,35 @@ public class CollectoClient {
 	/**
 	 * @param res is a string received from server, containing NEWGAME, 
 	 * a string of board fields and both plaers's names.
-	 * NEWGAME~<cell value>^49~<player1 name>~<player2 name>
+	 * NEWGAME~<cell value>^(dim * dim)~<player1 name>~<player2 name>[~SEED~<seed>]
+	 * The size of the board follows from the number of cells (49 for the 7x7 game) and
+	 * the number of colors from the highest cell value.
 	 */
 	public void setBoard(String res) {
 		this.player.reset();
 
 		String[] gameStr = res.split(Protocols.TILDE);
-		Colors[][] fields = new Colors[Board.DIM][Board.DIM];
-		for (int i = 1; i < Board.DIM * Board.DIM + 1; i++) {
-			int row = (i - 1) / Board.DIM,
-				col = (i - 1) % Board.DIM;
-			fields[row][col] = Colors.values()[Integer.parseInt(gameStr[i])];
+		int len = gameStr.length - 2; // Without the names
+		if (this.seedEnabled) {
+			this.seed = Long.parseLong(gameStr[gameStr.length - 1]);
+			MessageHandler.printMessage("Seed of the board: " + this.seed);
+			len -= 2;
+		}
+		int[] cells = new int[len - 1];
+		int colors = 0;
+		for (int i = 1; i < len; i++) {
+			cells[i - 1] = Integer.parseInt(gameStr[i]);
+			colors = Math.max(colors, cells[i - 1]);
 		}
 
-		this.board = new Board(fields);
+		int dim = (int) Math.round(Math.sqrt(cells.length));
+		this.board = new Board(Geometry.of(dim, colors), cells);
 		MessageHandler.printMessage(this.board.toString());
 	}
 
 	public void setOpponent(String res) throws ServerUnavailableException {
 		String[] gameStr = res.split(Protocols.TILDE);
-		int len = gameStr.length;
+		int len = this.seedEnabled ? gameStr.length - 2 : gameStr.length; // Without ~SEED~<seed>
 
 		if (this.player.getName().equals(gameStr[len - 2])) {
 			this.opponent = new HumanPlayer(gameStr[len- 1]);
@@ -361,7 +411,7 @@ public class CollectoClient {
 				MessageHandler.printMessage(this.opponent.getName() + ": " + msg);
 
 				msg = msg.replace(Protocols.MOVE + Protocols.TILDE, "");
-				this.opponent.makeMove(this.board, msg);
+				this.opponent.makeMove(this.board, Move.parse(this.getGeometry(), msg));
 				MessageHandler.printMessage(this.board.toString());
 			} else if (msg.startsWith(Protocols.GAMEOVER)) {
 				this.resetGame();
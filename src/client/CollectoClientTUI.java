@@ -1,6 +1,9 @@
 package client;
 
+import collecto.AlphaBetaStrategy;
 import collecto.ComputerPlayer;
+import collecto.Move;
+import collecto.Strategy;
 
 import exceptions.ServerUnavailableException;
 
@@ -33,12 +36,14 @@ public class CollectoClientTUI {
 		MessageHandler.printMessage("\n-- Collecto client --\n" + 
 							"1, AI player 01(Smart)\n" + 
 							"2, AI player 02(Naive)\n" +
-							"3, Human player\n");
+							"3, Human player\n" +
+							"4, AI player 03(AlphaBeta)\n" +
+							"5, AI player 04(MCTS)\n");
 							
 		System.out.print("Your option: ");
 		
 		int type = TextIO.getlnInt();
-		if (type != 1 && type != 2) {
+		if (type != 1 && type != 2 && type != 4 && type != 5) {
 			type = 3;
 		}
 
@@ -77,19 +82,13 @@ public class CollectoClientTUI {
 	public void handleMove(String input) throws ServerUnavailableException {
 		String[] command = input.split(Protocols.TILDE);
 		if (this.client.getState().equals(States.PLAYING)) {
-			if (command.length == 2) {
+			if (command.length == 2 || command.length == 3) {
+				String moveStr = input.substring(command[0].length() + 1);
 				if (this.client.getPlayer() instanceof ComputerPlayer || 
-						(this.client.getBoard() != null && this.client.getBoard().isValidSingleMove(this.client.getBoard().convertMoveStr(command[1])))) {
+						(this.client.getBoard() != null && this.client.getBoard().isValidMove(Move.parse(this.client.getGeometry(), moveStr)))) {
 					this.client.handleMove(input);
 				} else {
-					MessageHandler.printMessage(Protocols.ERROR + ": " + command[1] + " is not a valid move.");
-				}
-			} else if (command.length == 3) {
-				if (this.client.getPlayer() instanceof ComputerPlayer || 
-						(this.client.getBoard() != null && this.client.getBoard().isValidDoubleMove(this.client.getBoard().convertMoveStr(command[1]), this.client.getBoard().convertMoveStr(command[2])))) {
-					this.client.handleMove(input);
-				} else {
-					MessageHandler.printMessage(Protocols.ERROR + ": " + command[1] + Protocols.TILDE + command[2] + " is not a valid move.");
+					MessageHandler.printMessage(Protocols.ERROR + ": " + moveStr + " is not a valid move.");
 				}
 			} else {
 				MessageHandler.printMessage(Protocols.ERROR + Protocols.TILDE + "Invalid input");
@@ -103,12 +102,14 @@ public class CollectoClientTUI {
 		if (this.client.getPlayer() instanceof ComputerPlayer) {
 			MessageHandler.printMessage("\n-- Change AI --\n" + 
 								"1, Smart\n" + 
-								"2, Naive\n");
+								"2, Naive\n" +
+								"4, AlphaBeta\n" +
+								"5, MCTS\n");
 
 			System.out.print("Your option: ");
 
 			int type = TextIO.getlnInt();
-			while (!(type == 1 || type == 2)) {
+			while (!(type == 1 || type == 2 || type == 4 || type == 5)) {
 				type = TextIO.getlnInt();
 			}
 			this.client.handleChangeAI(type);
@@ -134,9 +135,13 @@ public class CollectoClientTUI {
 			String input = "";
 
 			if (this.client.getPlayer() instanceof ComputerPlayer && this.client.getState().equals(States.PLAYING)) {
-				String move = this.client.getPlayer().determineMove(this.client.getBoard());
-				input = Protocols.MOVE + Protocols.TILDE + move;
+				int move = this.client.getPlayer().determineMove(this.client.getBoard());
+				input = this.client.getMoveMessage(move);
 				MessageHandler.printMessage(this.client.getPlayer().getName() + ": " + input);
+				Strategy strategy = ((ComputerPlayer) this.client.getPlayer()).getStrategy();
+				if (strategy instanceof AlphaBetaStrategy) {
+					MessageHandler.printMessage("Search: " + ((AlphaBetaStrategy) strategy).getMetrics());
+				}
 			} else {
 				System.out.print(this.client.getPlayer().getName() + ": ");
 				input = TextIO.getlnString();
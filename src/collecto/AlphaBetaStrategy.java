@@ -0,0 +1,516 @@
+package collecto;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Searches the game tree with iterative-deepening alpha-beta (negamax) until a node or
+ * time budget is used up, and plays the best move of the deepest search that finished.
+ * Positions are valued by the difference in score between the player to move and the
+ * other player; a position without moves is won, lost or drawn. Single and double moves
+ * are generated as in Strategy, with one MoveCache per ply.
+ * Moves are tried in the order: the move of the transposition table, the two killer moves
+ * of the ply, then by the points they give and their history score, so most cutoffs happen
+ * on the first move.
+ * With more than one thread the search is Lazy SMP: helper threads search the same root on
+ * their own copy of the board, every other one a ply deeper and all with a little noise in
+ * their move order, and all threads share a SharedTranspositionTable. The helpers fill the
+ * table with results the main thread then does not have to search itself. The search stops
+ * when the main thread stops, and the move of the thread that finished the deepest search
+ * is played.
+ * A position that is in the Tablebase, if there is one, is not searched at all.
+ */
+public class AlphaBetaStrategy implements Strategy {
+
+	public static final long DEFAULT_NODES = 200000; // Nodes per move and thread
+	public static final long DEFAULT_MILLIS = 1000; // Milliseconds per move
+
+	private static final int MAX_PLY = 64;
+	private static final int WIN = 1000000; // Above every value of a position that is not over
+	private static final int INFINITY = WIN * 2;
+	private static final int POINT = 16; // The value of a point, the rest is for balls towards a point
+	private static final int CHECK_EVERY = 1023; // Nodes between two checks of the clock
+	private static final int NOISE = 1 << 12; // The range of the random history score helpers add to the move order
+
+	private final Player player;
+	private final long maxNodes;
+	private final long maxMillis;
+
+	private final SharedTranspositionTable table = new SharedTranspositionTable(18);
+	private final ForkJoinPool pool; // Null when there is only one thread
+	private final Searcher[] searchers; // The main thread first, then the helpers
+	private Tablebase tablebase; // Null when there is none
+
+	private Geometry geometry;
+	private long deadline;
+	private volatile boolean stopped; // Set when the main thread has finished, the helpers stop then
+	private long elapsed; // Nanoseconds of the last search
+	private int completedDepth;
+
+	/**
+	 * Creates a strategy that searches DEFAULT_NODES nodes or DEFAULT_MILLIS milliseconds per move
+	 * on the calling thread.
+	 * @param player the player the strategy plays for
+	 */
+	public AlphaBetaStrategy(Player player) {
+		this(player, DEFAULT_NODES, DEFAULT_MILLIS);
+	}
+
+	/**
+	 * Creates a strategy with the given budget per move that searches on the calling thread.
+	 * The search to depth 1 always finishes.
+	 * @param player the player the strategy plays for
+	 * @param maxNodes the number of nodes to search per move
+	 * @param maxMillis the number of milliseconds to search per move
+	 */
+	public AlphaBetaStrategy(Player player, long maxNodes, long maxMillis) {
+		this(player, maxNodes, maxMillis, 1);
+	}
+
+	/**
+	 * Creates a strategy with the given budget per move. The search to depth 1 always finishes.
+	 * @param player the player the strategy plays for
+	 * @param maxNodes the number of nodes every thread searches at most per move
+	 * @param maxMillis the number of milliseconds to search per move
+	 * @param threads the number of threads, the calling thread is the main thread; with more
+	 * 		than one the helpers run on a pool of their own until the strategy is closed
+	 * @throws IllegalArgumentException if threads < 1
+	 */
+	public AlphaBetaStrategy(Player player, long maxNodes, long maxMillis, int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("The number of threads must be at least 1");
+		}
+		this.player = player;
+		this.maxNodes = maxNodes;
+		this.maxMillis = maxMillis;
+		this.pool = threads > 1 ? new ForkJoinPool(threads - 1) : null;
+		this.searchers = new Searcher[threads];
+		for (int id = 0; id < threads; id++) {
+			this.searchers[id] = new Searcher(id);
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "AlphaBeta";
+	}
+
+	/**
+	 * Stop the threads of the helpers.
+	 */
+	@Override
+	public void close() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+	}
+
+	/**
+	 * Set the table of solved endings to look positions up in before they are searched.
+	 * @param tablebase the table, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * @return the number of threads that search
+	 */
+	public int getThreads() {
+		return this.searchers.length;
+	}
+
+	/**
+	 * @return the number of nodes of the last search, over all threads
+	 */
+	public long getNodes() {
+		long nodes = 0;
+		for (Searcher searcher : this.searchers) {
+			nodes += searcher.nodes;
+		}
+		return nodes;
+	}
+
+	/**
+	 * @return the number of nodes per second of the last search, over all threads
+	 */
+	public double getNodesPerSecond() {
+		return this.elapsed > 0 ? this.getNodes() * 1e9 / this.elapsed : 0;
+	}
+
+	/**
+	 * @return the part of the lookups in the transposition table of the last search that
+	 * 		found the position, between 0 and 1
+	 */
+	public double getHitRate() {
+		long probes = 0;
+		long hits = 0;
+		for (Searcher searcher : this.searchers) {
+			probes += searcher.probes;
+			hits += searcher.hits;
+		}
+		return probes > 0 ? (double) hits / probes : 0;
+	}
+
+	/**
+	 * @return the depth of the deepest iteration of the last search that finished, in any thread
+	 */
+	public int getCompletedDepth() {
+		return this.completedDepth;
+	}
+
+	/**
+	 * @return a line with the depth, speed and transposition table hit rate of the last search
+	 */
+	public String getMetrics() {
+		return String.format("depth %d, %d nodes, %.0f nodes/s, tt hits %.1f%%, %d threads",
+				this.completedDepth, this.getNodes(), this.getNodesPerSecond(), this.getHitRate() * 100,
+				this.searchers.length);
+	}
+
+	/**
+	 * Search the board deeper and deeper until the budget is used up.
+	 * @param board the board, it is left as it is
+	 * @return the best move of the deepest search that finished, or Move.NONE if there is no move
+	 */
+	@Override
+	public int determineMove(Board board) {
+		if (this.tablebase != null) {
+			int index = this.tablebase.probe(board, this.player.getColorCounts());
+			if (index != -1) {
+				return this.tablebase.getMove(index);
+			}
+		}
+
+		long start = System.nanoTime();
+		Geometry geometry = board.getGeometry();
+		if (!geometry.equals(this.geometry)) {
+			this.geometry = geometry;
+			this.table.clear();
+		}
+		this.table.newSearch();
+		this.deadline = start + this.maxMillis * 1000000L;
+		this.stopped = false;
+		ColorCounts mine = this.player.getColorCounts();
+		for (Searcher searcher : this.searchers) {
+			// The main thread searches the board itself, the helpers a copy
+			searcher.start(searcher.id == 0 ? board : board.deepCopy(), mine);
+		}
+
+		ForkJoinTask<?>[] helpers = new ForkJoinTask<?>[this.searchers.length - 1];
+		for (int h = 0; h < helpers.length; h++) {
+			helpers[h] = this.pool.submit(this.searchers[h + 1]);
+		}
+		this.searchers[0].run();
+		this.stopped = true;
+		for (ForkJoinTask<?> helper : helpers) {
+			helper.join();
+		}
+		this.elapsed = System.nanoTime() - start;
+
+		// The move of the deepest search that finished, of the main thread if it is one of the deepest
+		Searcher best = this.searchers[0];
+		for (Searcher searcher : this.searchers) {
+			if (searcher.completedDepth > best.completedDepth) {
+				best = searcher;
+			}
+		}
+		this.completedDepth = best.completedDepth;
+		return best.bestMove;
+	}
+
+	/**
+	 * The state of the search of one thread: its board, tables and the balls of both players.
+	 */
+	private final class Searcher implements Runnable {
+		private final int id; // 0 for the main thread
+		private final SplittableRandom random;
+		private final MoveCache[] moveCaches = new MoveCache[MAX_PLY];
+		private final MoveList[] moveLists = new MoveList[MAX_PLY];
+		private final MoveUndo[] undos = new MoveUndo[MAX_PLY];
+		private final int[][] order = new int[MAX_PLY][]; // Per ply, the order scores of the moves
+		private final int[][] indexes = new int[MAX_PLY][]; // Per ply, the index in the move list of every order score
+		private final int[][] killers = new int[MAX_PLY][2];
+		private int[] history = new int[0]; // Per packed move, the depth^2 of its cutoffs
+
+		/* The balls of both players (0 is the player at the root) and their scores */
+		private Geometry geometry;
+		private Board board;
+		private final SideCounts sides = new SideCounts();
+		private boolean aborted;
+		private int rootMove; // The best move of the root in the current iteration
+
+		/* The results of the search */
+		private long nodes;
+		private long probes;
+		private long hits;
+		private int completedDepth;
+		private int bestMove;
+
+		Searcher(int id) {
+			this.id = id;
+			this.random = new SplittableRandom(id);
+			for (int ply = 0; ply < MAX_PLY; ply++) {
+				this.moveCaches[ply] = new MoveCache();
+				this.moveLists[ply] = new MoveList();
+				this.undos[ply] = new MoveUndo();
+			}
+		}
+
+		/**
+		 * Set up the search of a board: the balls of both players and the tables.
+		 */
+		void start(Board board, ColorCounts mine) {
+			Geometry geometry = board.getGeometry();
+			if (!geometry.equals(this.geometry)) {
+				this.geometry = geometry;
+				this.history = new int[Move.count(geometry)];
+				for (int ply = 0; ply < MAX_PLY; ply++) {
+					this.order[ply] = new int[Move.count(geometry)];
+					this.indexes[ply] = new int[Move.count(geometry)];
+				}
+			}
+
+			this.board = board;
+			this.sides.start(board, mine);
+
+			for (int[] killer : this.killers) {
+				Arrays.fill(killer, Move.NONE);
+			}
+			for (int m = 0; m < this.history.length; m++) {
+				this.history[m] /= 2;
+			}
+			this.nodes = 0;
+			this.probes = 0;
+			this.hits = 0;
+			this.aborted = false;
+			this.completedDepth = 0;
+			this.bestMove = Move.NONE;
+		}
+
+		/**
+		 * Search deeper and deeper until the budget is used up or, for a helper, the main thread stops.
+		 * Odd helpers search one ply deeper than the iteration, so the threads do not all
+		 * search the same depth at the same time.
+		 */
+		@Override
+		public void run() {
+			MoveList rootMoves = this.moveLists[0];
+			this.moveCaches[0].getPossibleMoves(this.board, rootMoves);
+			if (!rootMoves.isEmpty()) {
+				this.bestMove = rootMoves.get(0);
+				for (int depth = 1 + (this.id & 1); depth < MAX_PLY; depth++) {
+					int value = this.search(depth, 0, -INFINITY, INFINITY);
+					if (this.aborted) {
+						break;
+					}
+					this.bestMove = this.rootMove;
+					this.completedDepth = depth;
+					// A won or lost game does not get better by searching deeper
+					if (Math.abs(value) >= WIN || this.nodes >= AlphaBetaStrategy.this.maxNodes) {
+						break;
+					}
+				}
+			}
+			this.board = null;
+		}
+
+		/**
+		 * Negamax alpha-beta search of the board.
+		 * @param depth the number of plies left
+		 * @param ply the number of plies from the root, the side to move is ply % 2
+		 * @return the value of the position for the side to move, 0 if the search is aborted
+		 */
+		private int search(int depth, int ply, int alpha, int beta) {
+			this.nodes++;
+			// The first iteration of the main thread always finishes, so there is a move to play
+			if (this.id == 0 ? this.completedDepth > 0 && this.outOfBudget()
+					: AlphaBetaStrategy.this.stopped || this.outOfBudget()) {
+				this.aborted = true;
+			}
+			if (this.aborted) {
+				return 0;
+			}
+
+			int side = ply & 1;
+			if (depth == 0 || ply == MAX_PLY - 1) {
+				return this.evaluate(side);
+			}
+
+			SharedTranspositionTable table = AlphaBetaStrategy.this.table;
+			long key = this.key(side);
+			int ttMove = Move.NONE;
+			long entry = table.probe(key);
+			this.probes++;
+			if (entry != 0) {
+				this.hits++;
+				ttMove = SharedTranspositionTable.getMove(entry);
+				if (ply > 0 && SharedTranspositionTable.getDepth(entry) >= depth) {
+					int value = SharedTranspositionTable.getValue(entry);
+					int flag = SharedTranspositionTable.getFlag(entry);
+					if (flag == SharedTranspositionTable.EXACT
+							|| flag == SharedTranspositionTable.LOWER && value >= beta
+							|| flag == SharedTranspositionTable.UPPER && value <= alpha) {
+						return value;
+					}
+				}
+			}
+
+			MoveList moves = this.moveLists[ply];
+			if (ply > 0) {
+				this.moveCaches[ply].getPossibleMoves(this.board, moves);
+			}
+			if (moves.isEmpty()) {
+				return this.gameOver(side);
+			}
+
+			this.scoreMoves(moves, ply, side, ttMove);
+			int alphaOrig = alpha;
+			int best = -INFINITY;
+			int bestMove = Move.NONE;
+			for (int k = 0; k < moves.size(); k++) {
+				int i = this.pickNext(moves.size(), ply, k);
+				int move = moves.get(i);
+				ColorCounts gains = moves.getGains(i);
+
+				this.board.makeMove(move, this.undos[ply]);
+				this.sides.addGains(side, gains, 1);
+				int value = -this.search(depth - 1, ply + 1, -beta, -alpha);
+				this.sides.addGains(side, gains, -1);
+				this.board.undoMove(this.undos[ply]);
+				if (this.aborted) {
+					return 0;
+				}
+
+				if (value > best) {
+					best = value;
+					bestMove = move;
+					if (ply == 0) {
+						this.rootMove = move;
+					}
+				}
+				if (best > alpha) {
+					alpha = best;
+				}
+				if (alpha >= beta) {
+					this.cutoff(move, ply, depth);
+					break;
+				}
+			}
+
+			int flag = best <= alphaOrig ? SharedTranspositionTable.UPPER
+					: best >= beta ? SharedTranspositionTable.LOWER : SharedTranspositionTable.EXACT;
+			table.store(key, depth, best, flag, bestMove);
+			return best;
+		}
+
+		/**
+		 * Give every move of the list a score to order it by, kept in order[ply] by index.
+		 * Helpers add a random amount to the history score, so they try moves of about the
+		 * same score in another order than the main thread.
+		 */
+		private void scoreMoves(MoveList moves, int ply, int side, int ttMove) {
+			int[] scores = this.order[ply];
+			for (int i = 0; i < moves.size(); i++) {
+				int move = moves.get(i);
+				this.indexes[ply][i] = i;
+				if (move == ttMove) {
+					scores[i] = Integer.MAX_VALUE;
+				} else if (move == this.killers[ply][0]) {
+					scores[i] = Integer.MAX_VALUE - 1;
+				} else if (move == this.killers[ply][1]) {
+					scores[i] = Integer.MAX_VALUE - 2;
+				} else {
+					// Points first, then balls, then the history of the move
+					ColorCounts gains = moves.getGains(i);
+					int[] count = this.sides.counts[side];
+					int points = 0;
+					for (int c = 1; c < count.length; c++) {
+						points += (count[c] + gains.get(c)) / 3 - count[c] / 3;
+					}
+					int history = this.history[move] + (this.id > 0 ? this.random.nextInt(NOISE) : 0);
+					scores[i] = (points << 24) + (gains.getTotal() << 18) + Math.min(history, (1 << 18) - 1);
+				}
+			}
+		}
+
+		/**
+		 * Find the move with the highest order score among the moves of the ply that have not
+		 * been tried yet, and move it to position k of the order so it is not picked again.
+		 * @return the index of the move in the move list
+		 */
+		private int pickNext(int size, int ply, int k) {
+			int[] scores = this.order[ply];
+			int[] index = this.indexes[ply];
+			int best = k;
+			for (int i = k + 1; i < size; i++) {
+				if (scores[i] > scores[best]) {
+					best = i;
+				}
+			}
+			int score = scores[best];
+			scores[best] = scores[k];
+			scores[k] = score;
+			int picked = index[best];
+			index[best] = index[k];
+			index[k] = picked;
+			return picked;
+		}
+
+		/**
+		 * Remember a move that caused a cutoff, as a killer of the ply and in the history.
+		 */
+		private void cutoff(int move, int ply, int depth) {
+			if (this.killers[ply][0] != move) {
+				this.killers[ply][1] = this.killers[ply][0];
+				this.killers[ply][0] = move;
+			}
+			this.history[move] += depth * depth;
+		}
+
+		/**
+		 * The key of a position for the transposition table: the balls on the board and the balls
+		 * of the side to move, the balls of the other side follow from them.
+		 */
+		private long key(int side) {
+			return this.board.getHash() ^ this.sides.keys[side];
+		}
+
+		/**
+		 * @return the value of a position that is not over for the side to move: POINT per point
+		 * 		ahead, and one for every color of which a side has two balls more than a multiple
+		 * 		of 3 while there are balls of the color left on the board
+		 */
+		private int evaluate(int side) {
+			int[] mine = this.sides.counts[side];
+			int[] other = this.sides.counts[1 - side];
+			int value = this.sides.difference(side) * POINT;
+			for (int c = 1; c < mine.length; c++) {
+				if (this.board.getBallCount(c) > 0) {
+					value += (mine[c] % 3 == 2 ? 1 : 0) - (other[c] % 3 == 2 ? 1 : 0);
+				}
+			}
+			return value;
+		}
+
+		/**
+		 * @return the value of a position without moves for the side to move: won, lost or drawn,
+		 * 		and by how many points
+		 */
+		private int gameOver(int side) {
+			int difference = this.sides.difference(side);
+			return difference > 0 ? WIN + difference : difference < 0 ? -WIN + difference : 0;
+		}
+
+		/**
+		 * @return true if the node or time budget has been used up, the clock is only read once in a while
+		 */
+		private boolean outOfBudget() {
+			return this.nodes >= AlphaBetaStrategy.this.maxNodes
+					|| (this.nodes & CHECK_EVERY) == 0 && System.nanoTime() >= AlphaBetaStrategy.this.deadline;
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+package collecto;
+
+/**
+ * Many independent boards in structure-of-arrays form, for rollouts and self-play that
+ * advance hundreds of positions in lockstep. Bitboard c of board i is planes[c][i] (see
+ * Board for the bitboards), so one push is a loop of the same bit operations over long
+ * arrays, done with the Vector API when it is available (see BatchKernel).
+ * Every board of the batch is pushed with the same move; a board on which the move does
+ * not remove any ball keeps its balls moved, as with Board.setMove.
+ * Only boards whose bitboards fit in one long can be batched, such as the 7x7 game.
+ */
+public class BatchBoard {
+
+	private static final BatchKernel SCALAR = new ScalarBatchKernel();
+	private static final BatchKernel VECTOR = loadVectorKernel();
+
+	private final Geometry geometry;
+	private final BatchKernel kernel;
+	private final long[][] planes;
+	private final long[][] removed; // The balls the last move removed, per color
+	private final long[][] trial; // Used to simulate moves without changing the planes
+	private final long[][] trialRemoved;
+	private final long[] moved;
+	private final long[] bits; // Used to copy one board in or out
+	private int size;
+
+	/**
+	 * Creates an empty batch for boards of the 7x7 game, on the Vector API if it is available.
+	 * @param capacity the maximum number of boards
+	 */
+	public BatchBoard(int capacity) {
+		this(Geometry.DEFAULT, capacity, true);
+	}
+
+	/**
+	 * Creates an empty batch.
+	 * @requires capacity >= 0
+	 * @param geometry the size of the boards, with at most 64 fields
+	 * @param capacity the maximum number of boards
+	 * @param vector whether to use the Vector API if it is available
+	 * @throws IllegalArgumentException if a bitboard of the geometry does not fit in one long
+	 */
+	public BatchBoard(Geometry geometry, int capacity, boolean vector) {
+		if (geometry.getWords() != 1) {
+			throw new IllegalArgumentException("Only boards of up to 64 fields can be batched, not " + geometry);
+		}
+		int planeCount = geometry.getColors() + 1;
+		this.geometry = geometry;
+		this.kernel = vector && VECTOR != null ? VECTOR : SCALAR;
+		this.planes = new long[planeCount][capacity];
+		this.removed = new long[planeCount][capacity];
+		this.trial = new long[planeCount][capacity];
+		this.trialRemoved = new long[planeCount][capacity];
+		this.moved = new long[capacity];
+		this.bits = new long[planeCount];
+	}
+
+	/**
+	 * @return the Vector API kernel, or null if jdk.incubator.vector is not available
+	 */
+	private static BatchKernel loadVectorKernel() {
+		try {
+			return (BatchKernel) Class.forName("collecto.VectorBatchKernel").getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the boards are pushed with the Vector API
+	 */
+	public boolean isVectorized() {
+		return this.kernel != SCALAR;
+	}
+
+	/**
+	 * @return the size of the boards of the batch
+	 */
+	public Geometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * @return the number of boards in the batch
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return the maximum number of boards
+	 */
+	public int getCapacity() {
+		return this.moved.length;
+	}
+
+	/**
+	 * Add a copy of a board to the batch.
+	 * @requires size() < getCapacity() and board.getGeometry().equals(getGeometry())
+	 * @param board the board to copy
+	 * @return the index of the board in the batch
+	 */
+	public int add(Board board) {
+		this.set(this.size, board);
+		return this.size++;
+	}
+
+	/**
+	 * Replace a board of the batch by a copy of the given board.
+	 * @requires 0 <= index && index <= size() and board.getGeometry().equals(getGeometry())
+	 * @param index the index of the board
+	 * @param board the board to copy
+	 */
+	public void set(int index, Board board) {
+		board.copyBits(this.bits);
+		for (int c = 0; c < this.planes.length; c++) {
+			this.planes[c][index] = this.bits[c];
+			this.removed[c][index] = 0;
+		}
+	}
+
+	/**
+	 * Remove all the boards, the batch can be filled again.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+	/**
+	 * @requires 0 <= index && index < size()
+	 * @return a new board with the balls of the board at the given index
+	 */
+	public Board toBoard(int index) {
+		long[] copy = new long[this.planes.length];
+		for (int c = 0; c < this.planes.length; c++) {
+			copy[c] = this.planes[c][index];
+		}
+		return Board.fromBits(this.geometry, copy);
+	}
+
+	/**
+	 * Push the same move on every board of the batch and remove the balls that match,
+	 * as Board.setMove does on one board.
+	 * @requires 0 <= move && move < getGeometry().getPushes()
+	 * @param move the push to make
+	 */
+	public void setMove(int move) {
+		this.kernel.push(this.geometry, move, this.planes, this.moved, this.size);
+		this.kernel.match(this.geometry, move, this.planes, this.moved, this.removed, this.size, true);
+	}
+
+	/**
+	 * Find the boards on which a push is a valid single move, without changing any board.
+	 * @requires 0 <= move && move < getGeometry().getPushes()
+	 * @param move the push to check
+	 * @param valid gets, per board, true if the push removes balls
+	 */
+	public void findMatches(int move, boolean[] valid) {
+		for (int c = 0; c < this.planes.length; c++) {
+			System.arraycopy(this.planes[c], 0, this.trial[c], 0, this.size);
+		}
+		this.kernel.push(this.geometry, move, this.trial, this.moved, this.size);
+		this.kernel.match(this.geometry, move, this.trial, this.moved, this.trialRemoved, this.size, false);
+
+		for (int i = 0; i < this.size; i++) {
+			long any = 0;
+			for (int c = 1; c < this.planes.length; c++) {
+				any |= this.trialRemoved[c][i];
+			}
+			valid[i] = any != 0;
+		}
+	}
+
+	/**
+	 * @requires 0 <= index && index < size()
+	 * @param color the ordinal of a color
+	 * @return the number of balls of the color the last move removed from the board at the given index
+	 */
+	public int getGain(int index, int color) {
+		return Long.bitCount(this.removed[color][index]);
+	}
+
+	/**
+	 * @requires 0 <= index && index < size()
+	 * @return the balls the last move removed from the board at the given index
+	 */
+	public ColorCounts getGains(int index) {
+		ColorCounts gains = new ColorCounts(this.geometry.getColors());
+		for (int c = 1; c < this.planes.length; c++) {
+			int gain = this.getGain(index, c);
+			if (gain != 0) {
+				gains.set(c, gain);
+			}
+		}
+		return gains;
+	}
+
+}
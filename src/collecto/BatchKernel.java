@@ -0,0 +1,36 @@
+package collecto;
+
+/**
+ * The push and match kernel of a BatchBoard. It works on a batch of boards in
+ * structure-of-arrays form: planes[c][i] is bitboard c (0 the occupancy, c the balls of the
+ * color with ordinal c, as in Board) of board i. A kernel only uses bit operations that are
+ * the same for every board, so all the boards of a batch are pushed in lockstep.
+ *
+ * A push towards field 0 of its line is done in dim - 1 rounds: in every round each ball whose
+ * next field towards the start of the line is EMPTY moves one field. After dim - 1 rounds the
+ * balls are packed against the start of the line, as LineTable gives them in one lookup.
+ * The matches are those of Board.matchLine, computed on the bitboards instead of line words.
+ */
+interface BatchKernel {
+
+	/**
+	 * Push the line of a move on boards 0 to size - 1.
+	 * @requires geometry.getWords() == 1
+	 * @param planes the bitboards of the boards, they get the balls after the push
+	 * @param moved gets, per board, the fields of the line that hold a moved ball after the push
+	 * @param size the number of boards
+	 */
+	void push(Geometry geometry, int move, long[][] planes, long[] moved, int size);
+
+	/**
+	 * Find the balls that match after a push.
+	 * @requires geometry.getWords() == 1
+	 * @param planes the bitboards of the boards after the push
+	 * @param moved per board, the fields of the line that hold a moved ball, as given by push
+	 * @param removed gets removed[c][i], the balls of the color with ordinal c that match on board i
+	 * @param size the number of boards
+	 * @param remove whether to take the matching balls from the planes
+	 */
+	void match(Geometry geometry, int move, long[][] planes, long[] moved, long[][] removed, int size, boolean remove);
+
+}
@@ -1,175 +1,405 @@
 package collecto;
 
 import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
 
 import utils.Colors;
 import utils.Protocols;
+import utils.Rng;
 
 public class Board {
 
+	/* The 7x7 game, Geometry.DEFAULT; a board of another size has its own Geometry */
 	public static final int DIM = 7; // Dimension of the board
 	public static final int EACH = 8; // Number of each color
 	public static final int MINMOVE = 0; // Minimum number of possible move
 	public static final int MAXMOVE = 27; // Maximum number of possible move
-	
-	private Colors[][] fields; // 2D array representing the board fields
+
+	/*
+	 * The board is stored as bitboards: bit (x * dim + y) stands for the field in row x, column y,
+	 * so the bits form a flattened array of the fields. A bitboard takes geometry.getWords() longs
+	 * (one long for the 7x7 game), bitboard 0 is the occupancy mask (every field that holds a ball),
+	 * bitboard c holds the balls of the color with ordinal c: word w of bitboard c is bits[c * words + w].
+	 */
+	private static final Colors[] COLORS = Colors.values();
+	private static final int OCCUPIED = Colors.EMPTY.ordinal();
+
+	private final Geometry geometry;
+	private final long[] bits;
+	private final long[] scratch; // Used to simulate moves without copying the board
+	private final long[] scratch2;
+	private final long[] between; // The bitboards after the first push of double moves, see simulateFirstPush
+	private final long[] movedBits; // The fields of a push that hold a moved ball, one bitboard
+	private final int[] matched = new int[3]; // The balls removed by matchLine, see there
+	private final MoveUndo undo = new MoveUndo(); // Used by setMove
+	private final BoardFeatures features; // Kept up to date by every move
+	private long hash; // Zobrist hash of the balls on the board, kept up to date by every move
 
 	/**
 	 * initialize the board in the constructor.
 	 */
 	public Board() {
+		this(Geometry.DEFAULT);
+	}
+
+	/**
+	 * Constructor that generates a new board of the given size.
+	 * @param geometry the size of the board and the number of colors
+	 */
+	public Board(Geometry geometry) {
+		this(geometry, new long[geometry.length], 0);
 		this.init(); // Call the init method to initialize the board
-    }
+	}
+
+	/**
+	 * Constructor that generates the board of a seed, the same seed always gives the same board.
+	 * @param seed the seed of the board, see BoardGenerator
+	 */
+	public Board(long seed) {
+		this(Geometry.DEFAULT, seed);
+	}
 
 	/**
-	 * Constructor with predefined board fields.
+	 * Constructor that generates the board of a seed for the given size.
+	 * @param geometry the size of the board and the number of colors
+	 * @param seed the seed of the board, see BoardGenerator
+	 */
+	public Board(Geometry geometry, long seed) {
+		this(geometry, new long[geometry.length], 0);
+		this.init(seed);
+	}
+
+	/**
+	 * Constructor with predefined board fields of the 7x7 game.
+	 * @requires fields.length == DIM and fields[i].length == DIM
 	 * @param fields The 2D array representing the predefined board fields
 	 */
 	public Board(Colors[][] fields) {
-		// Initialize fields array
-		this.fields = new Colors[DIM][DIM]; 
-		for (var i = 0; i < DIM; i++) {
-    		for (var j = 0; j < DIM; j++) {
-    			this.fields[i][j] = fields[i][j]; // Copy the values from the given fields to the board
-    		}
-    	}
-    }
-	
+		this(Geometry.DEFAULT, new long[Geometry.DEFAULT.length], 0);
+		this.setFields(fields); // Copy the values from the given fields to the board
+	}
+
+	/**
+	 * Constructor with predefined cells.
+	 * @requires cells.length == geometry.getFields()
+	 * @param geometry the size of the board and the number of colors
+	 * @param cells the color ordinal of every field (x * dim + y), 0 for EMPTY
+	 */
+	public Board(Geometry geometry, int[] cells) {
+		this(geometry, new long[geometry.length], 0);
+		this.setCells(cells);
+	}
+
+	/**
+	 * Constructor that copies another board without generating a new one first.
+	 * @param board the board to copy
+	 */
+	private Board(Board board) {
+		this(board.geometry, board.bits.clone(), board.hash);
+	}
+
+	/**
+	 * Constructor that restores the board of a snapshot.
+	 * @param snapshot the snapshot to restore
+	 */
+	public Board(BoardSnapshot snapshot) {
+		this(snapshot.getGeometry(), new long[snapshot.getGeometry().length], snapshot.getHash());
+		snapshot.copyTo(this.bits);
+		this.features.reset();
+	}
+
+	/**
+	 * Constructor that unpacks a packed board of the 7x7 game.
+	 * @param packed the packed board
+	 */
+	public Board(PackedBoard packed) {
+		this(Geometry.DEFAULT, new long[Geometry.DEFAULT.length], 0);
+		packed.unpack(this.bits);
+		this.rehash();
+	}
+
+	private Board(Geometry geometry, long[] bits, long hash) {
+		this.geometry = geometry;
+		this.bits = bits;
+		this.scratch = new long[geometry.length];
+		this.scratch2 = new long[geometry.length];
+		this.between = new long[geometry.length];
+		this.movedBits = new long[geometry.getWords()];
+		this.hash = hash;
+		this.features = new BoardFeatures(this);
+		this.features.reset();
+	}
+
+	/**
+	 * Create a board from bitboards laid out as in this class, for example by BatchBoard.
+	 * @param geometry the size of the board
+	 * @param bits the bitboards, they are taken over and not copied
+	 * @return the board
+	 */
+	static Board fromBits(Geometry geometry, long[] bits) {
+		Board board = new Board(geometry, bits, 0);
+		board.rehash();
+		return board;
+	}
+
+	/**
+	 * Copy the bitboards of this board.
+	 * @param bits an array of getGeometry().length longs
+	 */
+	void copyBits(long[] bits) {
+		System.arraycopy(this.bits, 0, bits, 0, this.bits.length);
+	}
+
+	/**
+	 * @return the size of the board and the number of colors
+	 */
+	public Geometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * @return the number of rows and columns
+	 */
+	public int getDim() {
+		return this.geometry.getDim();
+	}
+
+	/**
+	 * @return the number of different pushes, moves go from 0 to getPushes() - 1
+	 */
+	public int getPushes() {
+		return this.geometry.getPushes();
+	}
+
+	/**
+	 * @requires getGeometry().equals(Geometry.DEFAULT)
+	 * @return the board packed into three longs
+	 * @throws IllegalStateException if the board is not a board of the 7x7 game
+	 */
+	public PackedBoard pack() {
+		if (!this.geometry.equals(Geometry.DEFAULT)) {
+			throw new IllegalStateException("Only a 7x7 board with six colors can be packed");
+		}
+		return PackedBoard.pack(this.bits);
+	}
+
+	/**
+	 * Take an immutable snapshot of the board, other threads can read it without a lock.
+	 * @return the snapshot of the current position
+	 */
+	public BoardSnapshot snapshot() {
+		return new BoardSnapshot(this.geometry, this.bits, this.hash);
+	}
+
 	/**
 	 * Get the current state of the board.
-	 * @return fields The 2D array representing the board fields
+	 * @requires getGeometry().getColors() < Colors.values().length
+	 * @return fields A new 2D array representing the board fields
 	 */
 	public Colors[][] getFields() {
-		return this.fields;
+		int dim = this.getDim();
+		Colors[][] fields = new Colors[dim][dim];
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				fields[i][j] = this.getField(i, j);
+			}
+		}
+		return fields;
 	}
-	
+
 	/**
-	 * The board is a 2D array (DIM * DIM fields).
-	 * The center field of the board is EMPTY
-	 * Initialize the board with valid colors using the Fisher-Yates shuffle algorithm
-	 * Apply a random arrangement of colored balls while ensuring that no adjacent balls
-	 * of the same color initially. The algorithm guarantees a solvable game state.
-	 * @ensures the board is a valid board
-	 * @returns a valid board
+	 * Get the color of a single field.
+	 * @requires (0 <= x && x < getDim()) && (0 <= y && y < getDim())
+	 * @requires getGeometry().getColors() < Colors.values().length
+	 * @return the color of the ball in row x and column y, or EMPTY
 	 */
-	public void init() {
-		Colors[] colors = Arrays.stream(Colors.values())
-								.filter(color -> color != Colors.EMPTY)
-								.toArray(Colors[]::new);
-
-		// Create a list containing 8*6=48 balls (8 of each color except EMPTY)
-		Colors[] colorArr = new Colors[EACH * colors.length];
-
-		// Populate the list with balls of different colors
-		int fillIdx = 0;
-		for (int i = 0; i < EACH; i++) {
-			for (Colors color : colors) {
-				colorArr[fillIdx++] = color;
+	public Colors getField(int x, int y) {
+		return COLORS[this.getCell(x, y)];
+	}
+
+	/**
+	 * Get the color ordinal of a single field, on a board with any number of colors.
+	 * @requires (0 <= x && x < getDim()) && (0 <= y && y < getDim())
+	 * @return the color ordinal of the ball in row x and column y, or 0 if it is EMPTY
+	 */
+	public int getCell(int x, int y) {
+		int field = x * this.getDim() + y;
+		int word = field >>> 6;
+		long bit = 1L << field;
+		if ((this.bits[word] & bit) != 0) {
+			int words = this.geometry.getWords();
+			for (int c = 1; c <= this.geometry.getColors(); c++) {
+				if ((this.bits[c * words + word] & bit) != 0) {
+					return c;
+				}
 			}
 		}
+		return Colors.EMPTY.ordinal();
+	}
 
-		this.fields = new Colors[DIM][DIM];
-		this.fields[DIM / 2][DIM / 2] = Colors.EMPTY; // Set the middle field as EMPTY
-		int total = DIM * DIM;
-		int randRange = EACH * colors.length;
-		// Use a HashMap to store the count of balls that are to be filled.
-		// Key: Color of the balls
-		// Value: Number of balls of the same color that are to be filled
-		HashMap<Colors, Integer> filledColorMap = new HashMap<>();
-
-		// Iterate through each field to assign a color randomly while avoiding adjacent colors
-		for (int i = 0; i < total; i++) {
-			int row = i / DIM,
-				col = i % DIM;
-			
-			// Skip the middle field
-			if (row == DIM / 2 && col == DIM / 2) {
-				continue;
-			}
-			
-			int index = (int) (Math.random() * randRange);
-
-			// Ensure that the color assignment adheres to the rules of the game
-			if (row == 0) {
-				// If in the first row and not in the first column, ensure it does not have the same color as the left neighbor 
-				if (col != 0) {
-					Colors left = this.fields[row][col - 1];
-					while (colorArr[index] == left) {
-						index = (int) (Math.random() * randRange);
-					}
-				}
-			} else if (row > 0) {  // If not in the first row, check the top or left neighbor for color match
-				// If in the first column, only check the top neighbor
-				if (col == 0) {
-					Colors top = this.fields[row - 1][col];
-
-					// If in the last row, ensure the only remaining color is not the same as the color of the top neighbor. 
-					// Otherwise, the initialization of the board is invalid.
-					if (row == DIM - 1) {
-						HashSet<Colors> set = getRemainingColors(filledColorMap, colors);
-						if (set.size() == 1 && set.contains(top)) {
-							break;
-						}
-					}
-
-					// Ensure it does not have the same color as the top neighbor 
-					while (colorArr[index] == top) {
-						index = (int) (Math.random() * randRange);
-					}
-				} else { // If not in the first column, check the top or left neighbor
-					Colors top = this.fields[row - 1][col];
-    				Colors left = this.fields[row][col - 1];
-
-					// If in the last two rows, ensure there are at least 2 different colors available
-    				if (row == DIM - 1 || row == DIM - 2) {
-    					HashSet<Colors> set = getRemainingColors(filledColorMap, colors);
-	    				if (set.size() == 2 && set.contains(top) && set.contains(left)
-							|| set.size() == 1 && (set.contains(top) || set.contains(left))) {
-	    					break;
-	    				}
-    				}
-
-					// Ensure it does not have the same color as the top neighbor or the left neighbor.
-					while (colorArr[index]== top || colorArr[index]== left) {
-    					index = (int) (Math.random() * randRange);
-    				}
+	/**
+	 * Get how many balls of a color are on the board.
+	 * @requires color != Colors.EMPTY
+	 * @return the number of balls of the given color
+	 */
+	public int getBallCount(Colors color) {
+		return this.getBallCount(color.ordinal());
+	}
+
+	/**
+	 * Get how many balls of a color are on the board.
+	 * @requires 0 < color && color <= getGeometry().getColors()
+	 * @return the number of balls of the color with the given ordinal
+	 */
+	public int getBallCount(int color) {
+		return this.features.getBalls(color);
+	}
+
+	/**
+	 * Get how many balls are on the board.
+	 * @return the number of balls of all colors
+	 */
+	public int getBallCount() {
+		int balls = 0;
+		for (int c = 1; c <= this.geometry.getColors(); c++) {
+			balls += this.features.getBalls(c);
+		}
+		return balls;
+	}
+
+	/**
+	 * Count the balls of a color on the bitboard, see getBallCount.
+	 */
+	int countBalls(int color) {
+		int words = this.geometry.getWords();
+		int count = 0;
+		for (int w = color * words; w < (color + 1) * words; w++) {
+			count += Long.bitCount(this.bits[w]);
+		}
+		return count;
+	}
+
+	/**
+	 * Read the colors of a row or column, for BoardFeatures.
+	 * @param line 0 to dim - 1 for a row, dim to 2 * dim - 1 for a column
+	 * @param cells gets the color ordinal of the k-th field of the line at index k, 0 if it is EMPTY
+	 */
+	void getLine(int line, int[] cells) {
+		int dim = this.getDim();
+		int words = this.geometry.getWords();
+		int move = line < dim ? line : 2 * dim + line - dim; // The push to the left or to the top
+		int start = this.geometry.start[move];
+		int stride = this.geometry.stride[move];
+		Arrays.fill(cells, 0, dim, 0);
+		for (int c = 1; c <= this.geometry.getColors(); c++) {
+			for (int w : this.geometry.lineWords[move]) {
+				for (long balls = this.bits[c * words + w] & this.geometry.lineMask[move * words + w]; balls != 0; balls &= balls - 1) {
+					cells[(w * Long.SIZE + Long.numberOfTrailingZeros(balls) - start) / stride] = c;
 				}
 			}
+		}
+	}
 
-			this.fields[row][col] = colorArr[index]; // Assign the color to the current field
-			filledColorMap.put(colorArr[index], filledColorMap.getOrDefault(colorArr[index], 0) + 1);
-			swap(colorArr, index, randRange - 1);
-			randRange--;
+	/**
+	 * Replace the content of the board by the given fields.
+	 * @param fields The 2D array representing the board fields
+	 */
+	private void setFields(Colors[][] fields) {
+		int[] cells = new int[DIM * DIM];
+		for (int i = 0; i < DIM; i++) {
+			for (int j = 0; j < DIM; j++) {
+				cells[i * DIM + j] = fields[i][j].ordinal();
+			}
 		}
+		this.setCells(cells);
+	}
 
-		// If any balls remain in the list (shouldn't happen in a valid game state), reinitialize
-		if (randRange != 0) {
-			this.init();
+	/**
+	 * Replace the content of the board by the given cells.
+	 * @param cells the color ordinal of every field (x * dim + y), 0 for EMPTY
+	 */
+	private void setCells(int[] cells) {
+		int words = this.geometry.getWords();
+		Arrays.fill(this.bits, 0L);
+		for (int field = 0; field < cells.length; field++) {
+			if (cells[field] != Colors.EMPTY.ordinal()) {
+				long bit = 1L << field;
+				this.bits[cells[field] * words + (field >>> 6)] |= bit;
+				this.bits[field >>> 6] |= bit;
+			}
 		}
+		this.rehash();
 	}
 
-	public HashSet<Colors> getRemainingColors(HashMap<Colors, Integer> colorsMap, Colors[] colors) {
-		HashSet<Colors> set = new HashSet<>();
-		for (Colors color: colors) {
-			if (colorsMap.getOrDefault(color, 0) < EACH) {
-				set.add(color);
+	/**
+	 * Compute the hash of the board from scratch, after the balls have been replaced.
+	 */
+	private void rehash() {
+		Zobrist zobrist = this.geometry.zobrist;
+		int words = this.geometry.getWords();
+		this.hash = 0;
+		for (int c = 1; c <= this.geometry.getColors(); c++) {
+			for (int w = 0; w < words; w++) {
+				this.hash ^= zobrist.hash(c, w, this.bits[c * words + w]);
 			}
 		}
-		return set;
+		this.features.reset();
 	}
 
-	public void swap(Colors[] colorArr, int index1, int index2) {
-		if (index1 >= 0 && index1 < colorArr.length && index2 >= 0 && index2 < colorArr.length) {
-			Colors temp = colorArr[index1];
-			colorArr[index1] = colorArr[index2];
-			colorArr[index2] = temp;
-		} else {
-			throw new IllegalArgumentException("Invalid index"); 
+	/**
+	 * The features of the position: the balls left per color and the keys of the lines.
+	 * They are kept up to date by every move and undo.
+	 * @return the features, they belong to this board and change with it
+	 */
+	public BoardFeatures getFeatures() {
+		return this.features;
+	}
+
+	/**
+	 * @return the Zobrist hash of the position
+	 */
+	public long getHash() {
+		return this.hash;
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.hash ^ (this.hash >>> 32));
+	}
+
+	/**
+	 * Two boards are equal when they have the same size and the same balls on the same fields.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Board)) {
+			return false;
 		}
+		Board other = (Board) obj;
+		return this.geometry.equals(other.geometry) && Arrays.equals(this.bits, other.bits);
+	}
+
+	/**
+	 * The board is a 2D array (dim * dim fields).
+	 * The center field of the board is EMPTY
+	 * Apply a random arrangement of colored balls while ensuring that no adjacent balls
+	 * of the same color initially, see BoardGenerator.
+	 * @ensures the board is a valid board
+	 */
+	public void init() {
+		this.init(Rng.nextSeed());
+	}
+
+	/**
+	 * Initialize the board with the board of a seed.
+	 * @param seed the seed of the board, see BoardGenerator
+	 * @ensures the board is a valid board
+	 */
+	public void init(long seed) {
+		int[] cells = new int[this.geometry.getFields()];
+		new BoardGenerator(this.geometry, seed).generate(cells);
+		this.setCells(cells);
 	}
-	
+
 	/**
 	 * Creates a deep copy of this board.
 	 * @ensures the result is a new object distinct from this object
@@ -177,227 +407,475 @@ public class Board {
 	 * @return a deep copy of this board
 	 */
 	public Board deepCopy() {
-		// Create a new Board object to store the copied fields
-		Board boardCopy = new Board();
-
-		// Iterate over each field of the board and copy its value to the new board
-		for (int i = 0; i < DIM; i++) {
-			for (int j = 0; j < DIM; j++) {
-				boardCopy.fields[i][j] = this.fields[i][j];
-			}
-		}
-
-		// Return the deep copy of the board
-		return boardCopy;
+		return new Board(this);
 	}
-    
+
     /**
      * Sets the move
      * @param move The move direction: 0 for left, 1 for right, 2 for top, 3 for bottom.
-	 * @return a Map of the colors of the adjacent balls that are the same and their corresponding number.
-	 */
-    public HashMap<Colors, Integer> setMove(int move) {
-		// Use a HashMap to store the count of adjacent balls of the same color that are to be removed.
-		// Key: Color of the adjacent balls
-		// Value: Number of adjacent balls of the same color that are to be removed
-    	HashMap<Colors, Integer> colorMap = new HashMap<>();
-
-		// Move the balls and return the index of the first EMPTY field indicating that you can move the balls in that direction
-    	int firstEMPTYIndex = this.moveBalls(move);
-    	int line = move % DIM;  // Get the index of the column or the row, depending on the direction
-    	int sameColor = 0;  // The number of adjacent balls that have the same color after moving
-    	boolean kept = false; // Do not replace it with EMPTY and 'keep' it for the next comparison 
-
-    	if (firstEMPTYIndex != -1) {
-	    	switch (move / DIM) {
-	    		//Push to left
-	    		case 0:
-					// Loop over each field
-	    			for (int i = firstEMPTYIndex; i < DIM; i++) {
-						// If the current field is not EMPTY, compare it with the top, bottom, left and right neighbours.
-	    				if (this.fields[line][i] != Colors.EMPTY) {
-							// If the current field is not 'kept' in the last comparion and the top neighour has the same color, 
-							// increase sameColor by one and remove the ball (set it to EMPTY)
-	    					if (!kept && this.topIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line - 1][i] = Colors.EMPTY;
-	    					}
-
-							// If the bottom neighour has the same color, 
-							// increase sameColor by one and remove the ball (set it to EMPTY)
-	    					if (!kept && this.bottomIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line + 1][i] = Colors.EMPTY;
-	    					}
-
-							// If the left neighour has the same color, increase sameColor by one and remove the ball (set it to EMPTY)
-	    					if (this.leftIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line][i - 1] = Colors.EMPTY;
-	    					}
-
-							// If the ball at the right has the same color, 
-							// do not replace it with EMPTY and keep it for the next comparison.
-	    					if (this.rightIsSame(line, i)) {
-	    						sameColor++;
-								if (!kept) {
-	    							kept = true;
-								}
-	    					} else {
-								if (kept) {
-	    							kept = false;
-								}
-	    					}
-
-							// If there is a match
-	    					if (sameColor > 0) {
-	    						if (!kept) {
-	    							sameColor++;
-	    	    					colorMap.put(this.fields[line][i], colorMap.getOrDefault(this.fields[line][i], 0) + sameColor);
-	    	    					sameColor = 0; // reset sameColor for the next matched color
-	    	    				}
-	    						this.fields[line][i] = Colors.EMPTY; // Set the current field to EMPTY
-	    					}
-	    				} else {
-	    					break;
-	    				}
-	    			}
-	    			break;
-	    		//Push to right
-	    		case 1:
-	    			for (int i = firstEMPTYIndex; i >= 0; i--) {
-	    				if (this.fields[line][i] != Colors.EMPTY) {
-	    					if (this.topIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line - 1][i] = Colors.EMPTY;
-	    					}
-
-	    					if (this.bottomIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line + 1][i] = Colors.EMPTY;
-	    					}
-
-	    					if (this.leftIsSame(line, i)) {
-	    						sameColor++;
-	    						if (!kept) {
-	    							kept = true;
-								}
-	    					} else {
-	    						if (kept) {
-	    							kept = false;
-								}
-	    					}
-
-	    					if (this.rightIsSame(line, i)) {
-	    						sameColor++;
-	    						this.fields[line][i + 1] = Colors.EMPTY;
-	    					}
-
-	    					if (sameColor > 0) {
-	    						if (!kept) {
-	    							sameColor++;
-									colorMap.put(this.fields[line][i], colorMap.getOrDefault(this.fields[line][i], 0) + sameColor);
-	    	    					sameColor = 0;
-	    	    				}
-	    						this.fields[line][i] = Colors.EMPTY;
-	    					}
-	    				} else {
-	    					break;
-	    				}
-	    			}
-	    			break;
-	    		// Push to top
-	    		case 2:
-	    			for (int i = firstEMPTYIndex; i < DIM; i++) {
-	    				if (this.fields[i][line] != Colors.EMPTY) {
-	    					if (this.topIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i - 1][line] = Colors.EMPTY;
-	    					}
-
-	    					if (this.bottomIsSame(i, line)) {
-	    						sameColor++;
-	    						if (!kept) {
-	    							kept = true;
-								}
-	    					} else {
-	    						if (kept) {
-	    							kept = false;
-								}
-	    					}
-
-	    					if (this.leftIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i][line - 1] = Colors.EMPTY;
-	    					}
-
-	    					if (this.rightIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i][line + 1] = Colors.EMPTY;
-	    					}
-
-	    					if (sameColor > 0) {
-	    						if (!kept) {
-	    							sameColor++;
-									colorMap.put(this.fields[i][line], colorMap.getOrDefault(this.fields[i][line], 0) + sameColor);
-	    	    					sameColor = 0;
-	    	    				}
-	    						this.fields[i][line] = Colors.EMPTY;
-	    					}
-	    				} else {
-	    					break;
-	    				}
-	    			}
-	    			break;
-	    		//Push to bottom
-	    		case 3:
-	    			for (int i = firstEMPTYIndex; i >= 0; i--) {
-	    				if (this.fields[i][line] != Colors.EMPTY) {
-	    					if (this.topIsSame(i, line)) {
-	    						sameColor++;
-	    						if (!kept) {
-	    							kept = true;
-								}
-	    					} else {
-	    						if (kept) {
-	    							kept = false;
-								}
-	    					}
-
-	    					if (this.bottomIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i + 1][line] = Colors.EMPTY;
-	    					}
-
-	    					if (this.leftIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i][line - 1] = Colors.EMPTY;
-	    					}
-
-	    					if (this.rightIsSame(i, line)) {
-	    						sameColor++;
-	    						this.fields[i][line + 1] = Colors.EMPTY;
-	    					}
-
-	    					if (sameColor > 0) {
-	    						if (!kept) {
-	    							sameColor++;
-									colorMap.put(this.fields[i][line], colorMap.getOrDefault(this.fields[i][line], 0) + sameColor);
-	    	    					sameColor = 0;
-	    	    				}
-	    						this.fields[i][line] = Colors.EMPTY;
-	    					}
-	    				} else {
-	    					break;
-	    				}
-	    			}
-	    			break;
-	    	}
+	 * @return the colors of the adjacent balls that are the same and their corresponding number.
+	 */
+    public ColorCounts setMove(int move) {
+    	if (!this.moveInRange(move)) {
+    		return new ColorCounts();
     	}
 
-    	return colorMap;
+    	this.applyMove(move, this.undo);
+    	return new ColorCounts(this.undo.getGains());
     }
-    
+
+    /**
+     * Make a single move in place and record how to take it back.
+     * @requires 0 <= move && move < getPushes()
+     * @param move the push to make
+     * @return the undo record of the move, holding the balls the player gets
+     */
+    public MoveUndo applyMove(int move) {
+    	MoveUndo record = new MoveUndo();
+    	this.applyMove(move, record);
+    	return record;
+    }
+
+    /**
+     * Make a single move in place, reusing the given undo record.
+     * @requires 0 <= move && move < getPushes()
+     * @param move the push to make
+     * @param record the undo record to fill
+     */
+    public void applyMove(int move, MoveUndo record) {
+    	record.clear(this.bits.length);
+    	this.removeMatches(this.pushLine(move, this.recordPush(move, record)), move, record);
+    }
+
+    /**
+     * Make a double move in place and record how to take it back.
+     * @requires 0 <= move1 && move1 < getPushes()
+     * @requires 0 <= move2 && move2 < getPushes()
+     * @param move1 the first push, which only moves the balls
+     * @param move2 the second push
+     * @return the undo record of the move, holding the balls the player gets
+     */
+    public MoveUndo applyDoubleMove(int move1, int move2) {
+    	MoveUndo record = new MoveUndo();
+    	this.applyDoubleMove(move1, move2, record);
+    	return record;
+    }
+
+    /**
+     * Make a double move in place, reusing the given undo record.
+     * @param move1 the first push, which only moves the balls
+     * @param move2 the second push
+     * @param record the undo record to fill
+     */
+    public void applyDoubleMove(int move1, int move2, MoveUndo record) {
+    	record.clear(this.bits.length);
+    	this.pushLine(move1, this.recordPush(move1, record));
+    	this.removeMatches(this.pushLine(move2, this.recordPush(move2, record)), move2, record);
+    }
+
+    /**
+     * Make only the first push of a double move in place: the balls move, none are removed.
+     * The board in between can be used to try every second push, see Strategy#getPossibleMoves.
+     * @requires 0 <= move && move < getPushes()
+     * @param move the first push
+     * @param record the undo record to fill, undoMove takes the push back
+     * @return true if the push moves any ball
+     */
+    public boolean applyFirstPush(int move, MoveUndo record) {
+    	record.clear(this.bits.length);
+    	return this.pushLine(move, this.recordPush(move, record)) != 0;
+    }
+
+    /**
+     * Make a packed move in place, reusing the given undo record.
+     * @requires isValidMove(move)
+     * @param move a single or double move, see Move
+     * @param record the undo record to fill
+     */
+    public void makeMove(int move, MoveUndo record) {
+    	if (Move.isDouble(this.geometry, move)) {
+    		this.applyDoubleMove(Move.first(this.geometry, move), Move.last(this.geometry, move), record);
+    	} else {
+    		this.applyMove(move, record);
+    	}
+    }
+
+    /**
+     * Make a packed move.
+     * @requires isValidMove(move)
+     * @param move a single or double move, see Move
+     * @return the balls the player gets
+     */
+    public ColorCounts makeMove(int move) {
+    	this.makeMove(move, this.undo);
+    	return new ColorCounts(this.undo.getGains());
+    }
+
+    /**
+     * Check a packed move and make it if it is valid, doing the work of the move once.
+     * A push that removes no balls is taken back, so the board only changes for a valid move.
+     * @param move a single or double move, see Move
+     * @return the balls the player gets, or null if the move is not valid
+     */
+    public ColorCounts tryApply(int move) {
+    	if (move < 0 || move >= Move.count(this.geometry)) {
+    		return null;
+    	}
+    	// A double move is only allowed when there is no single move
+    	if (Move.isDouble(this.geometry, move) && this.hasSingleMove()) {
+    		return null;
+    	}
+
+    	this.makeMove(move, this.undo);
+    	if (this.undo.getGains().isEmpty()) {
+    		this.undoMove(this.undo);
+    		return null;
+    	}
+    	return new ColorCounts(this.undo.getGains());
+    }
+
+    /**
+     * Take back a move made with applyMove, applyDoubleMove or makeMove.
+     * @requires record is the undo record of the last move made on this board
+     * @param record the undo record of the move
+     */
+    public void undoMove(MoveUndo record) {
+    	Zobrist zobrist = this.geometry.zobrist;
+    	int words = this.geometry.getWords();
+
+		// Put the removed balls back, then restore the pushed lines in reverse order
+    	for (int i = 0; i < this.bits.length; i++) {
+    		if (record.removed[i] != 0) {
+    			this.bits[i] |= record.removed[i];
+    			if (i < words) {
+    				this.features.changed(i, record.removed[i]);
+    			} else {
+    				this.hash ^= zobrist.hash(i / words, i % words, record.removed[i]);
+    				this.features.addBalls(i / words, Long.bitCount(record.removed[i]));
+    			}
+    		}
+    	}
+    	for (int p = record.pushes - 1; p >= 0; p--) {
+    		int move = record.moves[p];
+    		long[] line = record.lines[p];
+    		for (int w : this.geometry.lineWords[move]) {
+    			long lineMask = this.geometry.lineMask[move * words + w];
+    			long changed = 0;
+    			for (int c = 0, i = w; c <= this.geometry.getColors(); c++, i += words) {
+    				long diff = line[i] ^ (this.bits[i] & lineMask);
+    				this.hash ^= c == OCCUPIED ? 0 : zobrist.hash(c, w, diff);
+    				this.bits[i] = (this.bits[i] & ~lineMask) | line[i];
+    				changed |= diff;
+    			}
+    			this.features.changed(w, changed);
+    		}
+    	}
+    }
+
+    /**
+     * Save the line of a push in the undo record before the push is made.
+     * @return the bits of the line before the push, laid out as the bitboards
+     */
+    private long[] recordPush(int move, MoveUndo record) {
+    	long[] line = record.lines[record.pushes];
+    	this.saveLine(move, line);
+    	record.moves[record.pushes++] = move;
+    	return line;
+    }
+
+    /**
+     * Copy the words of the bitboards that hold the line of a push, masked to the line.
+     * @param line gets the bits of the line, laid out as the bitboards
+     */
+    private void saveLine(int move, long[] line) {
+    	int words = this.geometry.getWords();
+    	for (int w : this.geometry.lineWords[move]) {
+    		long lineMask = this.geometry.lineMask[move * words + w];
+    		for (int i = w; i < this.bits.length; i += words) {
+    			line[i] = this.bits[i] & lineMask;
+    		}
+    	}
+    }
+
+    /**
+     * Push the balls of one line of this board and update the hash.
+     * @param move the push to make
+     * @param before the bits of the line before the push
+     * @return the fields of the line that hold a moved ball after the push, in push order
+     */
+    private int pushLine(int move, long[] before) {
+    	int moved = this.push(this.bits, move);
+    	if (moved != 0) {
+    		Zobrist zobrist = this.geometry.zobrist;
+    		int words = this.geometry.getWords();
+    		for (int w : this.geometry.lineWords[move]) {
+    			long lineMask = this.geometry.lineMask[move * words + w];
+    			long changed = 0;
+    			for (int c = 1, i = words + w; c <= this.geometry.getColors(); c++, i += words) {
+    				long diff = before[i] ^ (this.bits[i] & lineMask);
+    				this.hash ^= zobrist.hash(c, w, diff);
+    				changed |= diff;
+    			}
+    			this.features.changed(w, changed);
+    		}
+    	}
+    	return moved;
+    }
+
+    /**
+     * Remove the balls that match after a push.
+     * @param moved the fields of the line of the push that hold a moved ball, in push order
+     * @param move the push that has been made
+     * @param record the undo record that gets the removed balls and the gains
+     */
+    private void removeMatches(int moved, int move, MoveUndo record) {
+    	if (moved == 0) {
+    		return;
+    	}
+
+    	int words = this.geometry.getWords();
+    	int across = this.geometry.across[move];
+    	this.setMovedBits(moved, move);
+    	for (int c = 1; c <= this.geometry.getColors(); c++) {
+    		if (this.touchesMoved(this.bits, c * words, move) && this.matchLine(this.bits, c * words, move, moved)) {
+    			int removed = this.removeLine(c, this.matched[0], move, 0, record)
+    					+ this.removeLine(c, this.matched[1], move, -across, record)
+    					+ this.removeLine(c, this.matched[2], move, across, record);
+    			record.gains.set(c, removed);
+    		}
+    	}
+    }
+
+    /**
+     * Remove balls of one color from a line.
+     * @param color the ordinal of the color
+     * @param fields the balls to remove as a line in push order
+     * @param offset 0 for the line of the push, or -across / across for a line next to it
+     * @param record the undo record that gets the removed balls
+     * @return the number of removed balls
+     */
+    private int removeLine(int color, int fields, int move, int offset, MoveUndo record) {
+    	Zobrist zobrist = this.geometry.zobrist;
+    	int base = color * this.geometry.getWords();
+    	int stride = this.geometry.stride[move];
+    	int first = this.geometry.start[move] + offset;
+    	for (int rest = fields; rest != 0; rest &= rest - 1) {
+    		int field = first + Integer.numberOfTrailingZeros(rest) * stride;
+    		int word = field >>> 6;
+    		long bit = 1L << field;
+    		this.bits[base + word] &= ~bit;
+    		this.bits[word] &= ~bit;
+    		record.removed[base + word] |= bit;
+    		record.removed[word] |= bit;
+    		this.hash ^= zobrist.key(field, color);
+    		this.features.changed(word, bit);
+    	}
+    	this.features.addBalls(color, -Integer.bitCount(fields));
+    	return Integer.bitCount(fields);
+    }
+
+    /*
+     * One kernel handles all the moves. A push is described by the field the balls are pushed
+     * towards (start), the offset from one field of its line to the next one away from that
+     * field (stride) and the offset to the parallel lines on both sides of it (across), see Geometry.
+     * The fields of a line are read "in push order": field k is the k-th field counted from
+     * start, so every push moves the balls towards field 0.
+     */
+
+    /**
+     * Push the balls of one row or column.
+     * The new position of the balls of every color is looked up in the LineTable, or computed
+     * on lines that are longer than the table.
+     * @param b the bitboards to push the balls on
+     * @param move the push to make
+     * @return the fields of the line that hold a moved ball after the push, in push order
+     */
+    private int push(long[] b, int move) {
+    	Geometry g = this.geometry;
+    	int occ = this.gather(b, OCCUPIED, move, 0);
+    	int moved = g.lineTable ? LineTable.moved(occ) : movedAfterPush(occ);
+    	if (moved == 0) {
+    		return 0;
+    	}
+
+    	int words = g.getWords();
+    	if (words == 1) {
+    		// A board of up to 8x8 fields, every bitboard is one long (the 7x7 game)
+    		long lineMask = g.lineMask[move];
+    		for (int c = 0; c < b.length; c++) {
+    			if ((b[c] & lineMask) != 0) {
+    				int line = this.gather(b, c, move, 0);
+    				b[c] &= ~lineMask;
+    				this.scatter(b, c, g.lineTable ? LineTable.slide(occ, line) : slide(occ, line), move, 0);
+    			}
+    		}
+    		return moved;
+    	}
+
+    	int[] lineWords = g.lineWords[move];
+    	for (int base = 0; base < b.length; base += words) {
+    		if (this.touchesLine(b, base, move)) {
+    			int line = this.gather(b, base, move, 0);
+    			for (int w : lineWords) {
+    				b[base + w] &= ~g.lineMask[move * words + w];
+    			}
+    			this.scatter(b, base, g.lineTable ? LineTable.slide(occ, line) : slide(occ, line), move, 0);
+    		}
+    	}
+
+    	return moved;
+    }
+
+    /**
+     * The fields that hold a moved ball after a push towards field 0, for lines longer than the LineTable.
+     * The balls after the first EMPTY field move, they end up from that field on.
+     * @param occ the occupied fields of the line before the push
+     */
+    private static int movedAfterPush(int occ) {
+    	int firstEmpty = Integer.numberOfTrailingZeros(~occ);
+    	int balls = Integer.bitCount(occ);
+    	return balls > firstEmpty ? ((1 << balls) - 1) & ~((1 << firstEmpty) - 1) : 0;
+    }
+
+    /**
+     * The new position of some of the balls of a line after a push towards field 0, for lines
+     * longer than the LineTable: the k-th occupied field ends up on field k.
+     * @param occ the occupied fields of the line before the push
+     * @param subset the fields of the balls to move, a subset of occ
+     */
+    private static int slide(int occ, int subset) {
+    	int slid = 0;
+    	for (int k = 0; occ != 0; occ &= occ - 1, k++) {
+    		if ((subset & occ & -occ) != 0) {
+    			slid |= 1 << k;
+    		}
+    	}
+    	return slid;
+    }
+
+    /**
+     * Compute the balls of one color that are removed after a push.
+     * Every moved ball that touches a ball of the same color is removed, together with
+     * the balls of the same color next to it. Only when pushing to the left, a ball that
+     * follows a moved ball of the same color in the row does not take the balls of the
+     * rows above and below with it.
+     * The removed balls are left in matched, in push order: the line of the push in
+     * matched[0], the line before it in matched[1] and the line after it in matched[2].
+     * @param b the bitboards after the push
+     * @param base the index of the first word of the bitboard of the color
+     * @param move the push that has been made
+     * @param moved the fields of the line that hold a moved ball, in push order
+     * @return true if any ball is removed
+     */
+    private boolean matchLine(long[] b, int base, int move, int moved) {
+    	Geometry g = this.geometry;
+    	int line = this.gather(b, base, move, 0);
+    	int mine = moved & line;
+    	if (mine == 0) {
+    		return false;
+    	}
+
+    	int before = (g.acrossLines[move] & 1) != 0 ? this.gather(b, base, move, -g.across[move]) : 0;
+    	int after = (g.acrossLines[move] & 2) != 0 ? this.gather(b, base, move, g.across[move]) : 0;
+    	int across = g.trailingAcross[move] ? mine : mine & ~(mine << 1);
+
+    	this.matched[0] = (mine & (this.nextTo(line) | before | after)) | (this.nextTo(mine) & line);
+    	this.matched[1] = across & before;
+    	this.matched[2] = across & after;
+    	return (this.matched[0] | this.matched[1] | this.matched[2]) != 0;
+    }
+
+    /**
+     * @return the fields of a line next to the given fields
+     */
+    private int nextTo(int fields) {
+    	return ((fields << 1) | (fields >>> 1)) & this.geometry.line;
+    }
+
+    /**
+     * Read the fields of a line in push order.
+     * @param b bitboards
+     * @param base the index of the first word of the bitboard to read
+     * @param move a push
+     * @param offset 0 for the line of the push, or -across / across for a line next to it
+     * @return the line as a word of dim bits, bit k for the k-th field from start
+     */
+    private int gather(long[] b, int base, int move, int offset) {
+    	int fields = 0;
+    	int field = this.geometry.start[move] + offset;
+    	int stride = this.geometry.stride[move];
+    	if (this.geometry.getWords() == 1) {
+    		long x = b[base];
+    		for (int k = 0; k < this.geometry.getDim(); k++, field += stride) {
+    			fields |= (int) ((x >>> field) & 1) << k;
+    		}
+    		return fields;
+    	}
+    	for (int k = 0; k < this.geometry.getDim(); k++, field += stride) {
+    		fields |= (int) ((b[base + (field >>> 6)] >>> field) & 1) << k;
+    	}
+    	return fields;
+    }
+
+    /**
+     * Add the fields of a line in push order to a bitboard.
+     * @param b bitboards
+     * @param base the index of the first word of the bitboard to write
+     * @param fields the line as a word of dim bits, bit k for the k-th field from start
+     * @param move a push
+     * @param offset 0 for the line of the push, or -across / across for a line next to it
+     */
+    private void scatter(long[] b, int base, int fields, int move, int offset) {
+    	int field = this.geometry.start[move] + offset;
+    	int stride = this.geometry.stride[move];
+    	for (int rest = fields; rest != 0; rest &= rest - 1) {
+    		int f = field + Integer.numberOfTrailingZeros(rest) * stride;
+    		b[base + (f >>> 6)] |= 1L << f;
+    	}
+    }
+
+    /**
+     * @return true if the bitboard at base has a ball on the line of the push
+     */
+    private boolean touchesLine(long[] b, int base, int move) {
+    	int words = this.geometry.getWords();
+    	for (int w : this.geometry.lineWords[move]) {
+    		if ((b[base + w] & this.geometry.lineMask[move * words + w]) != 0) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
+    /**
+     * Keep the fields of the line of a push that hold a moved ball in movedBits.
+     */
+    private void setMovedBits(int moved, int move) {
+    	if (this.movedBits.length == 1) {
+    		this.movedBits[0] = 0;
+    	} else {
+    		for (int w : this.geometry.lineWords[move]) {
+    			this.movedBits[w] = 0;
+    		}
+    	}
+    	this.scatter(this.movedBits, 0, moved, move, 0);
+    }
+
+    /**
+     * @return true if the bitboard at base has a ball on one of the fields in movedBits
+     */
+    private boolean touchesMoved(long[] b, int base, int move) {
+    	if (this.movedBits.length == 1) {
+    		return (b[base] & this.movedBits[0]) != 0;
+    	}
+    	for (int w : this.geometry.lineWords[move]) {
+    		if ((b[base + w] & this.movedBits[w]) != 0) {
+    			return true;
+    		}
+    	}
+    	return false;
+    }
+
     /**
      * Check if a ball has a neighbor that has the same color
      * @param x position of the ball
@@ -405,154 +883,207 @@ public class Board {
      * @return true or false
      */
     public boolean hasSame(int x, int y) {
-    	return this.topIsSame(x, y) || this.bottomIsSame(x, y) 
+    	return this.topIsSame(x, y) || this.bottomIsSame(x, y)
     			|| this.leftIsSame(x, y) || this.rightIsSame(x, y);
     }
-	
+
     /**
      * Reset the board by generating a new board.
      */
 	public void reset() {
 		this.init();
 	}
-	
+
 	/**
 	 * Check whether the game is over or not.
 	 * @return true when there are not single move and double move,
 	 * or false when there is a single move or double move
 	 */
 	public boolean gameOver() {
-		for (int i = Board.MINMOVE; i <= Board.MAXMOVE; i++) {
-			if (isValidSingleMove(i)) {
-				return false;
+		return !this.hasAnyLegalMove();
+	}
+
+	/**
+	 * Check whether the player to move has any valid single move or double move.
+	 * Stops at the first valid move it finds and does not allocate.
+	 * @return true if there is at least one valid move
+	 */
+	public boolean hasAnyLegalMove() {
+		if (this.hasSingleMove()) {
+			return true;
+		}
+
+		// No single move, try every first push followed by every second push
+		int pushes = this.getPushes();
+		for (int i = 0; i < pushes; i++) {
+			System.arraycopy(this.bits, 0, this.scratch, 0, this.bits.length);
+			if (this.push(this.scratch, i) == 0) {
+				continue;
 			}
-			for (int j = Board.MINMOVE; j <= Board.MAXMOVE; j++) {
-				if (this.isValidDoubleMove(i, j)) {
-					return false;
+			for (int j = 0; j < pushes; j++) {
+				if (this.pushMatches(this.scratch, this.scratch2, j)) {
+					return true;
 				}
 			}
 		}
-		
-		return true;
+
+		return false;
 	}
-	
+
+	/**
+	 * Check whether the player to move has a valid single move, stops at the first one.
+	 * @return true if there is at least one valid single move
+	 */
+	public boolean hasSingleMove() {
+		for (int i = 0; i < this.getPushes(); i++) {
+			if (this.pushMatches(this.bits, this.scratch, i)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
-	 * @requires MINMOVE <= move && move <= MAXMOVE
+	 * Get all the valid single moves at once.
+	 * @requires getPushes() <= Integer.SIZE, true for boards up to 7x7
+	 * @return a mask in which bit i is set if move i is a valid single move
+	 */
+	public int legalMoveMask() {
+		int mask = 0;
+		for (int i = 0; i < this.getPushes(); i++) {
+			if (this.pushMatches(this.bits, this.scratch, i)) {
+				mask |= 1 << i;
+			}
+		}
+		return mask;
+	}
+
+	/**
+	 * @requires 0 <= move && move < getPushes()
 	 * @param move a move to be checked
 	 * @return true or false
 	 */
 	public boolean isValidSingleMove(int move) {
-		boolean isValid = false;
+		return moveInRange(move) && this.pushMatches(this.bits, this.scratch, move);
+	}
 
-		if (!moveInRange(move)) {
-			return isValid;
+	/**
+	 * Check a packed move.
+	 * @param move a single or double move, see Move
+	 * @return the validity of the move
+	 */
+	public boolean isValidMove(int move) {
+		if (move < 0 || move >= Move.count(this.geometry)) {
+			return false;
 		}
-
-		int moveIndex = -1;
-		int direction = move / DIM;
-		int line = move % DIM;
-
-		Board boardCopy = this.deepCopy();
-
-    	switch (direction) {
-    		//Move to left
-    		case 0:
-    			for (int i = 0; i < DIM; i++) {
-    				if (moveIndex != -1 && boardCopy.fields[line][i] != Colors.EMPTY) {
-    					boardCopy.fields[line][moveIndex] = boardCopy.fields[line][i];
-    					boardCopy.fields[line][i] = Colors.EMPTY;
-
-    					if (boardCopy.hasSame(line, moveIndex)) {
-    						isValid = true;
-    						break;
-    					}
-
-    					moveIndex++;
-    				} else if (moveIndex == -1 && boardCopy.fields[line][i] == Colors.EMPTY) {
-    					moveIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to right
-    		case 1:
-    			for (int i = DIM - 1; i >= 0; i--) {
-    				if (moveIndex != -1 && boardCopy.fields[line][i] != Colors.EMPTY) {
-    					boardCopy.fields[line][moveIndex] = boardCopy.fields[line][i];
-    					boardCopy.fields[line][i] = Colors.EMPTY;
-
-    					if (boardCopy.hasSame(line, moveIndex)) {
-    						isValid = true;
-    						break;
-    					}
-
-    					moveIndex--;
-    				} else if (moveIndex == -1 && boardCopy.fields[line][i] == Colors.EMPTY) {
-    					moveIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to top
-    		case 2:
-    			for (int i = 0; i < DIM; i++) {
-    				if (moveIndex != -1 && boardCopy.fields[i][line] != Colors.EMPTY) {
-    					boardCopy.fields[moveIndex][line] = boardCopy.fields[i][line];
-    					boardCopy.fields[i][line] = Colors.EMPTY;
-
-    					if (boardCopy.hasSame(moveIndex, line)) {
-    						isValid = true;
-    						break;
-    					}
-
-    					moveIndex++;
-    				} else if (moveIndex == -1 && boardCopy.fields[i][line] == Colors.EMPTY) {
-    					moveIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to bottom
-    		case 3:
-    			for (int i = DIM - 1; i >= 0; i--) {
-    				if (moveIndex != -1 && boardCopy.fields[i][line] != Colors.EMPTY) {
-    					boardCopy.fields[moveIndex][line] = boardCopy.fields[i][line];
-    					boardCopy.fields[i][line] = Colors.EMPTY;
-
-    					if (boardCopy.hasSame(moveIndex, line)) {
-    						isValid = true;
-    						break;
-    					}
-
-    					moveIndex--;
-    				} else if (moveIndex == -1 && boardCopy.fields[i][line] == Colors.EMPTY) {
-    					moveIndex = i;
-    				}
-    			}
-    			break;
-    	}
-    	
-		return isValid;
+		return Move.isDouble(this.geometry, move)
+				? this.isValidDoubleMove(Move.first(this.geometry, move), Move.last(this.geometry, move))
+				: this.isValidSingleMove(move);
 	}
 
 	/**
 	 * Check the double move.
-	 * @requires MINMOVE <= move1 && move1 <= MAXMOVE
-	 * * @requires MINMOVE <= move2 && move2 <= MAXMOVE
+	 * @requires 0 <= move1 && move1 < getPushes()
+	 * * @requires 0 <= move2 && move2 < getPushes()
 	 * @param move1 the first move must be invalid
 	 * @param move2 the second move
 	 * @return the validity of the double move
 	 */
 	public boolean isValidDoubleMove(int move1, int move2) {
-    	for (int i = Board.MINMOVE; i < Board.MAXMOVE; i++) {
-			if (this.isValidSingleMove(i)) {
-				return false;
-			}
+		if (!moveInRange(move1) || !moveInRange(move2) || this.hasSingleMove()) {
+			return false;
 		}
 
-		Board boardCopy = this.deepCopy();
-		boardCopy.moveBalls(move1);
+		System.arraycopy(this.bits, 0, this.scratch, 0, this.bits.length);
+		this.push(this.scratch, move1);
 
-		return boardCopy.isValidSingleMove(move2);
+		return this.pushMatches(this.scratch, this.scratch2, move2);
     }
-	
+
+	/**
+	 * Count the balls a single move would remove, without changing the board.
+	 * @requires 0 <= move && move < getPushes()
+	 * @param move the push
+	 * @param gains gets the balls the move removes
+	 * @return true if the push is a valid single move
+	 */
+	boolean simulateMove(int move, ColorCounts gains) {
+		return this.countMatches(this.bits, move, gains);
+	}
+
+	/**
+	 * Make the first push of double moves on a copy of the bitboards, so every second push
+	 * can be simulated after it with simulateSecondPush.
+	 * @requires 0 <= move && move < getPushes()
+	 * @return true if the push moves any ball
+	 */
+	boolean simulateFirstPush(int move) {
+		System.arraycopy(this.bits, 0, this.between, 0, this.bits.length);
+		return this.push(this.between, move) != 0;
+	}
+
+	/**
+	 * Count the balls the second push of a double move would remove after the last simulateFirstPush.
+	 * @requires 0 <= move && move < getPushes()
+	 * @param gains gets the balls the double move removes
+	 * @return true if the push makes a match, so the double move is valid if there is no single move
+	 */
+	boolean simulateSecondPush(int move, ColorCounts gains) {
+		return this.countMatches(this.between, move, gains);
+	}
+
+	/**
+	 * Simulate a push and count the balls that match, as removeMatches would remove them.
+	 * @param from the bitboards to push the balls on, they are left untouched
+	 * @param move the push to simulate
+	 * @param gains gets the number of matching balls per color
+	 * @return true if any ball matches
+	 */
+	private boolean countMatches(long[] from, int move, ColorCounts gains) {
+		gains.clear();
+		System.arraycopy(from, 0, this.scratch, 0, from.length);
+		int moved = this.push(this.scratch, move);
+		if (moved == 0) {
+			return false;
+		}
+
+		int words = this.geometry.getWords();
+		boolean any = false;
+		this.setMovedBits(moved, move);
+		for (int c = 1; c <= this.geometry.getColors(); c++) {
+			if (this.touchesMoved(this.scratch, c * words, move) && this.matchLine(this.scratch, c * words, move, moved)) {
+				gains.set(c, Integer.bitCount(this.matched[0]) + Integer.bitCount(this.matched[1]) + Integer.bitCount(this.matched[2]));
+				any = true;
+			}
+		}
+		return any;
+	}
+
+	/**
+	 * Simulate a push and check whether it makes a match.
+	 * @param from the bitboards to push the balls on, they are left untouched
+	 * @param tmp the bitboards used to simulate the push
+	 * @param move the push to check
+	 * @return true if a moved ball ends up next to a ball of the same color
+	 */
+	private boolean pushMatches(long[] from, long[] tmp, int move) {
+		System.arraycopy(from, 0, tmp, 0, from.length);
+		int moved = this.push(tmp, move);
+		if (moved == 0) {
+			return false;
+		}
+
+		int words = this.geometry.getWords();
+		this.setMovedBits(moved, move);
+		for (int base = words; base < tmp.length; base += words) {
+			if (this.touchesMoved(tmp, base, move) && this.matchLine(tmp, base, move, moved)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * Move the balls in the specified direction
 	 * @param move The move direction: 0 for left, 1 for right, 2 for top, 3 for bottom.
@@ -562,183 +1093,118 @@ public class Board {
 	 * If you want to move the balls to the left, firstMoveIndex will be 5.
 	 */
 	public int moveBalls(int move) {
-		int firstEMPTYIndex = -1;  // The index of the first EMPTY field that you can move the ball to in a specified direction
-		int emptyIndex = -1; // Used for moving all the balls in a specified direction
-		int direction = move / DIM;  // Get the move direction
-		int line = move % DIM; // Get the index of the column or the row, depending on the direction
-		Boolean hasMove = false; // Flag indicating if there is any move
-
-    	switch (direction) {
-    		//Move to left
-    		case 0:
-    			for (int i = 0; i < DIM; i++) {
-					// If there is an EMPTY field and there is a ball in one of the fields
-    				if (emptyIndex != -1 && this.fields[line][i] != Colors.EMPTY) {
-						if (!hasMove) {
-							hasMove = true;
-						}
-    					
-						// Move the ball to the EMPTY field
-    					this.fields[line][emptyIndex] = this.fields[line][i];
-						// Set the field to EMPTY after moving
-    					this.fields[line][i] = Colors.EMPTY;
-						// Increase the index of the EMPTY field by 1
-    					emptyIndex++;
-    				} else if (emptyIndex == -1 && this.fields[line][i] == Colors.EMPTY) {
-    					firstEMPTYIndex = i;
-    					emptyIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to right
-    		case 1:
-    			for (int i = DIM - 1; i >= 0; i--) {
-    				if (emptyIndex != -1 && this.fields[line][i] != Colors.EMPTY) {
-    					if (!hasMove) {
-							hasMove = true;
-						}
-
-    					this.fields[line][emptyIndex] = this.fields[line][i];
-    					this.fields[line][i] = Colors.EMPTY;
-						// Decrease the index of the EMPTY field by 1
-    					emptyIndex--;
-    				} else if (emptyIndex == -1 && this.fields[line][i] == Colors.EMPTY) {
-    					firstEMPTYIndex = i;
-    					emptyIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to top
-    		case 2:
-    			for (int i = 0; i < DIM; i++) {
-    				if (emptyIndex != -1 && this.fields[i][line] != Colors.EMPTY) {
-    					if (!hasMove) {
-							hasMove = true;
-						}
-
-    					this.fields[emptyIndex][line] = this.fields[i][line];
-    					this.fields[i][line] = Colors.EMPTY;
-    					emptyIndex++;
-    				} else if (emptyIndex == -1 && this.fields[i][line] == Colors.EMPTY) {
-    					firstEMPTYIndex = i;
-    					emptyIndex = i;
-    				}
-    			}
-    			break;
-    		//Move to bottom
-    		case 3:
-    			for (int i = DIM - 1; i >= 0; i--) {
-    				if (emptyIndex != -1 && this.fields[i][line] != Colors.EMPTY) {
-    					if (!hasMove) {
-							hasMove = true;
-						}
-						
-    					this.fields[emptyIndex][line] = this.fields[i][line];
-    					this.fields[i][line] = Colors.EMPTY;
-    					emptyIndex--;
-    				} else if (emptyIndex == -1 && this.fields[i][line] == Colors.EMPTY) {
-    					firstEMPTYIndex = i;
-    					emptyIndex = i;
-    				}
-    			}
-    			break;
-    	}
-    	
-    	if (!hasMove && firstEMPTYIndex != -1) {
-    		firstEMPTYIndex = -1;
-    	}
-    	
-    	return firstEMPTYIndex;
+		if (!this.moveInRange(move)) {
+			return -1;
+		}
+
+		this.saveLine(move, this.scratch);
+		int moved = this.pushLine(move, this.scratch);
+		if (moved == 0) {
+			return -1;
+		}
+
+		// The first EMPTY field in the direction of the push is where the first moved ball ends up
+		int dim = this.getDim();
+		int first = this.geometry.start[move] + Integer.numberOfTrailingZeros(moved) * this.geometry.stride[move];
+		return move / dim < 2 ? first % dim : first / dim;
 	}
-	
+
 	/*
-	 * @requires (0 <= x && x <= DIM) && (0 <= y && y <= DIM)
+	 * @requires (0 <= x && x <= dim) && (0 <= y && y <= dim)
 	 * @returns true if this.fields[x][y] == this.fields[x - 1][y], else false
 	 */
 	public boolean topIsSame(int x, int y) {
-		return x > 0 ? (this.fields[x][y] == this.fields[x - 1][y]) : false;
-	} 
-	
+		return x > 0 ? (this.getCell(x, y) == this.getCell(x - 1, y)) : false;
+	}
+
 	/*
-	 * @requires (0 <= x && x <= DIM) && (0 <= y && y <= DIM)
+	 * @requires (0 <= x && x <= dim) && (0 <= y && y <= dim)
 	 * @returns true if this.fields[x][y] == this.fields[x + 1][y], else false
 	 */
 	public boolean bottomIsSame(int x, int y) {
-		return x < (DIM - 1) ? (this.fields[x][y] == this.fields[x + 1][y]) : false;
-	} 
-	
+		return x < (this.getDim() - 1) ? (this.getCell(x, y) == this.getCell(x + 1, y)) : false;
+	}
+
 	/*
-	 * @requires (0 <= x && x <= DIM) && (0 <= y && y <= DIM)
+	 * @requires (0 <= x && x <= dim) && (0 <= y && y <= dim)
 	 * @returns true if this.fields[x][y] == this.fields[x][y - 1], else false
 	 */
 	public boolean leftIsSame(int x, int y) {
-		return y > 0 ? (this.fields[x][y] == this.fields[x][y - 1]) : false;
-	} 
-	
+		return y > 0 ? (this.getCell(x, y) == this.getCell(x, y - 1)) : false;
+	}
+
 	/*
-	 * @requires (0 <= x && x <= DIM) && (0 <= y && y <= DIM)
+	 * @requires (0 <= x && x <= dim) && (0 <= y && y <= dim)
 	 * @returns true if this.fields[x][y] == this.fields[x][y + 1], else false
 	 */
 	public boolean rightIsSame(int x, int y) {
-		return y < DIM - 1 ? (this.fields[x][y] == this.fields[x][y + 1]) : false;
-	} 
-	
+		return y < this.getDim() - 1 ? (this.getCell(x, y) == this.getCell(x, y + 1)) : false;
+	}
+
 	/**
-     * Returns a String representation of this board. 
+     * Returns a String representation of this board.
+     * The pushes are written around it, on the side the balls are pushed away from: the left
+     * pushes on the right, the right pushes on the left, the top pushes below and the bottom
+     * pushes above the board.
      * @return the game situation as String
      */
     @Override
 	public String toString() {
-        String s = "      21 22 23 24 25 26 27\n" +
-        		   "   *************************\n";
+    	int dim = this.getDim();
+    	int width = String.valueOf(this.getPushes() - 1).length(); // Width of a label and a cell
+    	String margin = " ".repeat(width + 4);
+    	String stars = " ".repeat(width + 1) + "*".repeat((width + 1) * dim + 4) + "\n";
+
+        String s = margin + this.pushLabels(3 * dim, width) + "\n" + stars;
 
-        for (int i = 0; i < DIM; i++) {
-            String row = String.format("%-2s * ", i + 7);
-            for (int j = 0; j < DIM; j++) {
-            	row += " " + this.fields[i][j].ordinal() + " ";
+        for (int i = 0; i < dim; i++) {
+            String row = String.format("%-" + width + "s * ", i + dim);
+            for (int j = 0; j < dim; j++) {
+            	row += " " + String.format("%-" + width + "d", this.getCell(i, j));
             }
             s += row + " * " + i + "\n";
         }
 
-     	s += "   *************************\n" +
-     	     "      14 15 16 17 18 19 20\n";
+     	s += stars + margin + this.pushLabels(2 * dim, width) + "\n";
 
         return s;
     }
-    
+
+    /**
+     * @return the numbers of the dim pushes from first on, every one in a column of the board
+     */
+    private String pushLabels(int first, int width) {
+    	StringBuilder sb = new StringBuilder();
+    	for (int j = 0; j < this.getDim(); j++) {
+    		sb.append(j == 0 ? "" : " ").append(String.format("%-" + width + "d", first + j));
+    	}
+    	return sb.toString().stripTrailing();
+    }
+
     /**
-     * @return a string of an initial board
+     * @return a string of an initial board, the color ordinal of every one of the dim * dim fields
      */
     public String toProtocolString() {
-        String s = "";
+    	int dim = this.getDim();
+        StringBuilder sb = new StringBuilder(2 * dim * dim);
 
-        for (int i = 0; i < DIM; i++) {
-            for (int j = 0; j < DIM; j++) {
-            	s += Protocols.TILDE + this.fields[i][j].ordinal();
+        for (int i = 0; i < dim; i++) {
+            for (int j = 0; j < dim; j++) {
+            	sb.append(Protocols.TILDE).append(this.getCell(i, j));
             }
         }
 
-        return s;
+        return sb.toString();
     }
-    
+
     public boolean moveInRange(int move) {
-    	return MINMOVE <= move && move <= MAXMOVE;
+    	return 0 <= move && move < this.getPushes();
     }
-    
-    public int convertMoveStr(String moveStr) {
-    	int move = -1;
-
-    	if (moveStr.matches("[0-9]+")) {
-    		move = Integer.parseInt(moveStr);
-    	}
 
-    	return move;
-    }
-    
     public static void main(String[] args) {
     	Board board = new Board();
     	System.out.println(board.getFields());
     	System.out.println(board.toString());
     }
-    
+
 }
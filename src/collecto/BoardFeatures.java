@@ -0,0 +1,129 @@
+package collecto;
+
+/**
+ * Features of a board that the board keeps up to date on every move and undo,
+ * see {@link Board#getFeatures()}:
+ * - the number of balls of every color that are left on the board;
+ * - the key of every line, the XOR of the Zobrist keys of its balls, so the outcome of a
+ *   push can be cached for as long as the lines it depends on do not change (see MoveCache).
+ * The ball counts change with every removed ball. The keys are kept per line: a move marks
+ * the lines of the fields it changes, and only those lines are counted again the next time
+ * a key is read. Reading a key costs O(1) when nothing has changed, and never more than
+ * counting the changed lines.
+ * Lines are numbered 0 to dim - 1 for the rows and dim to 2 * dim - 1 for the columns.
+ */
+public class BoardFeatures {
+
+	private final Board board;
+	private final Geometry geometry;
+
+	/* The number of balls left, indexed by color ordinal */
+	private final int[] balls;
+
+	/* Per field: the bits of its row and its column in dirty */
+	private final long[] fieldLines;
+
+	/* Per line: the XOR of the keys of its balls, rotated for columns so a row and a column do not cancel */
+	private final long[] lineKeys;
+
+	/* The lines that have changed since they were last counted, bit l for line l */
+	private long dirty;
+
+	/* The colors of the line that is counted */
+	private final int[] cells;
+
+	/**
+	 * @param board the board the features belong to
+	 */
+	BoardFeatures(Board board) {
+		this.board = board;
+		this.geometry = board.getGeometry();
+		int dim = this.geometry.getDim();
+		this.balls = new int[this.geometry.getColors() + 1];
+		this.fieldLines = new long[this.geometry.getFields()];
+		for (int field = 0; field < this.fieldLines.length; field++) {
+			this.fieldLines[field] = 1L << (field / dim) | 1L << (dim + field % dim);
+		}
+		this.lineKeys = new long[2 * dim];
+		this.cells = new int[dim];
+	}
+
+	/**
+	 * Count everything again, after the balls of the board have been replaced.
+	 */
+	void reset() {
+		for (int c = 1; c < this.balls.length; c++) {
+			this.balls[c] = this.board.countBalls(c);
+		}
+		this.dirty = (1L << (2 * this.geometry.getDim())) - 1;
+	}
+
+	/**
+	 * Mark the lines of changed fields.
+	 * @param word the index of a word of a bitboard
+	 * @param changed the changed fields in that word
+	 */
+	void changed(int word, long changed) {
+		for (int first = word * Long.SIZE; changed != 0; changed &= changed - 1) {
+			this.dirty |= this.fieldLines[first + Long.numberOfTrailingZeros(changed)];
+		}
+	}
+
+	/**
+	 * Add or take balls of a color.
+	 * @param color the ordinal of the color
+	 * @param amount the number of balls put back, negative for removed balls
+	 */
+	void addBalls(int color, int amount) {
+		this.balls[color] += amount;
+	}
+
+	/**
+	 * @requires 0 < color && color <= geometry.getColors()
+	 * @return the number of balls of the color with the given ordinal on the board
+	 */
+	public int getBalls(int color) {
+		return this.balls[color];
+	}
+
+	/**
+	 * The key of a line changes whenever a ball of the line changes, and is the same
+	 * whenever the line holds the same balls again.
+	 * @requires 0 <= line && line < 2 * dim
+	 * @return the key of the balls of the line
+	 */
+	long getLineKey(int line) {
+		this.refresh();
+		return this.lineKeys[line];
+	}
+
+	/**
+	 * Count the lines that have changed.
+	 */
+	private void refresh() {
+		for (long lines = this.dirty; lines != 0; lines &= lines - 1) {
+			this.count(Long.numberOfTrailingZeros(lines));
+		}
+		this.dirty = 0;
+	}
+
+	/**
+	 * Count the key of one line.
+	 * @param line the index of the line
+	 */
+	private void count(int line) {
+		int dim = this.geometry.getDim();
+		long key = 0;
+
+		this.board.getLine(line, this.cells);
+		for (int k = 0; k < dim; k++) {
+			int color = this.cells[k];
+			if (color != 0) {
+				key ^= this.geometry.zobrist.key(line < dim ? line * dim + k : k * dim + line - dim, color);
+			}
+		}
+
+		this.lineKeys[line] = line < dim ? key : Long.rotateLeft(key, Integer.SIZE);
+	}
+
+}
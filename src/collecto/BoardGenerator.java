@@ -0,0 +1,191 @@
+package collecto;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import utils.Colors;
+import utils.Rng;
+
+/**
+ * Generates the start position of a game: `each` balls of every color, the center field
+ * EMPTY and no two adjacent balls of the same color.
+ * The fields are filled row by row. Every field draws one of the remaining balls whose
+ * color differs from its top and left neighbor, each of them with the same chance, and a
+ * fill that gets stuck starts over. This is the distribution of the original shuffle.
+ * About 7 in 10 fills of the 7x7 game succeed, so the number of fills is capped at
+ * MAX_ATTEMPTS. If all of them get stuck, which is practically impossible for the 7x7 game
+ * but happens on every fill of a board with two colors (only a checkerboard is valid), the
+ * colors of a fixed valid layout are shuffled instead, so the cost of a board is bounded.
+ * A generator draws from its own seeded SplittableRandom: the same seed gives the same
+ * boards, so a board can be rebuilt from its seed. A generator is not thread safe.
+ * A generator fills a board of one Geometry, the 7x7 game unless another one is given.
+ */
+public class BoardGenerator {
+
+	public static final int MAX_ATTEMPTS = 64;
+
+	private final Geometry geometry;
+	private final boolean original; // The 7x7 game, whose fills follow the original shuffle exactly
+	private final SplittableRandom random;
+
+	/**
+	 * Creates a generator with a new seed.
+	 */
+	public BoardGenerator() {
+		this(Rng.nextSeed());
+	}
+
+	/**
+	 * Creates a generator that always produces the same boards for the same seed.
+	 * @param seed the seed of the generator
+	 */
+	public BoardGenerator(long seed) {
+		this(Geometry.DEFAULT, seed);
+	}
+
+	/**
+	 * Creates a generator of boards of the given size that always produces the same boards for the same seed.
+	 * @param geometry the size of the boards and the number of colors
+	 * @param seed the seed of the generator
+	 */
+	public BoardGenerator(Geometry geometry, long seed) {
+		this.geometry = geometry;
+		this.original = geometry.equals(Geometry.DEFAULT);
+		this.random = new SplittableRandom(seed);
+	}
+
+	/**
+	 * A valid layout, built directly. Two fields with the same parity of x + y are never
+	 * adjacent, so the fields of even parity are given the colors first, from the top row
+	 * down, and then the fields of odd parity, again from the top row down, each color
+	 * `each` fields in a row. Only the color at the switch can have fields of both parities:
+	 * the last fields of even parity are at the bottom of the board and the first fields of
+	 * odd parity at the top, so they are not adjacent.
+	 * @param cells gets the color ordinal of every field (x * dim + y)
+	 */
+	static void fallback(Geometry geometry, int[] cells) {
+		int center = geometry.getCenter();
+		int ball = 0;
+		for (int parity = 0; parity < 2; parity++) {
+			for (int i = 0; i < geometry.getFields(); i++) {
+				if (i == center) {
+					cells[i] = 0;
+				} else if ((i / geometry.getDim() + i % geometry.getDim()) % 2 == parity) {
+					cells[i] = 1 + ball++ / geometry.getEach();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Generate a new start position.
+	 * @param cells an array of dim * dim that gets the color ordinal of every field (x * dim + y)
+	 * @ensures the position is valid: no two adjacent balls of the same color
+	 */
+	public void generate(int[] cells) {
+		int[] remaining = new int[this.geometry.getColors() + 1];
+		for (int attempt = 0; attempt < MAX_ATTEMPTS; attempt++) {
+			if (this.fill(cells, remaining)) {
+				return;
+			}
+		}
+		this.shuffleFallback(cells);
+	}
+
+	/**
+	 * Generate a new start position.
+	 * @requires the geometry has no more colors than Colors
+	 * @return the fields of the position
+	 */
+	public Colors[][] generate() {
+		int dim = this.geometry.getDim();
+		int[] cells = new int[this.geometry.getFields()];
+		this.generate(cells);
+
+		Colors[] colors = Colors.values();
+		Colors[][] fields = new Colors[dim][dim];
+		for (int i = 0; i < cells.length; i++) {
+			fields[i / dim][i % dim] = colors[cells[i]];
+		}
+		return fields;
+	}
+
+	/**
+	 * Fill the fields once.
+	 * @param cells gets the color ordinal of every field
+	 * @param remaining scratch array for the number of balls left per color
+	 * @return false if a field could not get a color, the cells are then not a valid position
+	 */
+	private boolean fill(int[] cells, int[] remaining) {
+		int dim = this.geometry.getDim();
+		int fields = this.geometry.getFields();
+		int center = this.geometry.getCenter();
+		Arrays.fill(remaining, this.geometry.getEach());
+		remaining[0] = 0; // EMPTY: the center field, never drawn
+		int left = fields - 1;
+		int colorsLeft = this.geometry.getColors(); // Colors that still have a ball
+
+		for (int i = 0; i < fields; i++) {
+			if (i == center) {
+				cells[i] = 0;
+				continue;
+			}
+
+			int top = i >= dim ? cells[i - dim] : 0;
+			int side = i % dim != 0 ? cells[i - 1] : 0;
+			int allowed = left - remaining[top] - (side != top ? remaining[side] : 0);
+			if (allowed == 0) {
+				return false;
+			}
+
+			// The original shuffle also started over in the last two rows when only two colors were
+			// left and one of them is the color of both the top and the left neighbor. It is kept
+			// for the 7x7 game, since it is part of the distribution of its boards.
+			if (this.original && top == side && top != 0 && colorsLeft == 2 && remaining[top] > 0
+					&& i >= (dim - 2) * dim) {
+				return false;
+			}
+
+			// Draw one of the allowed balls and find its color
+			int ball = this.random.nextInt(allowed);
+			int color = 1;
+			while (color == top || color == side || ball >= remaining[color]) {
+				if (color != top && color != side) {
+					ball -= remaining[color];
+				}
+				color++;
+			}
+
+			cells[i] = color;
+			remaining[color]--;
+			left--;
+			if (remaining[color] == 0) {
+				colorsLeft--;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Shuffle the colors of the fallback layout, which keeps it valid.
+	 * @param cells gets the color ordinal of every field
+	 */
+	private void shuffleFallback(int[] cells) {
+		int[] fallback = new int[cells.length];
+		fallback(this.geometry, fallback);
+		int[] permutation = new int[this.geometry.getColors() + 1];
+		for (int c = 0; c < permutation.length; c++) {
+			permutation[c] = c;
+		}
+		for (int c = permutation.length - 1; c > 1; c--) {
+			int other = 1 + this.random.nextInt(c);
+			int temp = permutation[c];
+			permutation[c] = permutation[other];
+			permutation[other] = temp;
+		}
+		for (int i = 0; i < cells.length; i++) {
+			cells[i] = permutation[fallback[i]];
+		}
+	}
+
+}
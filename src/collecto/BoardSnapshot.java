@@ -0,0 +1,138 @@
+package collecto;
+
+import java.util.Arrays;
+
+import utils.Colors;
+
+/**
+ * An immutable view of a board at one moment, see {@link Board#snapshot()}.
+ * It holds a copy of the bitboards of the board (seven longs for the 7x7 game), so it is
+ * cheap to create, and it never changes afterwards: any thread can read it without a lock.
+ */
+public final class BoardSnapshot {
+
+	private static final Colors[] COLORS = Colors.values();
+	private static final int OCCUPIED = Colors.EMPTY.ordinal();
+
+	private final Geometry geometry;
+	/* The bitboards of the board: the occupancy first, then the balls of every color, as in Board */
+	private final long[] bits;
+	private final long hash;
+
+	/**
+	 * @param geometry the size of the board
+	 * @param bits the bitboards of a board, they are copied
+	 * @param hash the Zobrist hash of the board
+	 */
+	BoardSnapshot(Geometry geometry, long[] bits, long hash) {
+		this.geometry = geometry;
+		this.bits = bits.clone();
+		this.hash = hash;
+	}
+
+	/**
+	 * @return the size of the board and the number of colors
+	 */
+	public Geometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * Get the color ordinal of a single field.
+	 * @requires (0 <= x && x < dim) && (0 <= y && y < dim)
+	 * @return the color ordinal of the ball in row x and column y, or 0 if it is EMPTY
+	 */
+	public int getCell(int x, int y) {
+		int field = x * this.geometry.getDim() + y;
+		int word = field >>> 6;
+		long bit = 1L << field;
+		if ((this.bits[OCCUPIED + word] & bit) != 0) {
+			int words = this.geometry.getWords();
+			for (int c = 1; c <= this.geometry.getColors(); c++) {
+				if ((this.bits[c * words + word] & bit) != 0) {
+					return c;
+				}
+			}
+		}
+		return Colors.EMPTY.ordinal();
+	}
+
+	/**
+	 * Get the color of a single field.
+	 * @requires (0 <= x && x < dim) && (0 <= y && y < dim)
+	 * @requires getGeometry().getColors() < Colors.values().length
+	 * @return the color of the ball in row x and column y, or EMPTY
+	 */
+	public Colors getField(int x, int y) {
+		return COLORS[this.getCell(x, y)];
+	}
+
+	/**
+	 * @requires getGeometry().getColors() < Colors.values().length
+	 * @return fields A new 2D array representing the board fields
+	 */
+	public Colors[][] getFields() {
+		int dim = this.geometry.getDim();
+		Colors[][] fields = new Colors[dim][dim];
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				fields[i][j] = this.getField(i, j);
+			}
+		}
+		return fields;
+	}
+
+	/**
+	 * @requires color != Colors.EMPTY
+	 * @return the number of balls of the given color
+	 */
+	public int getBallCount(Colors color) {
+		int words = this.geometry.getWords();
+		int count = 0;
+		for (int w = color.ordinal() * words; w < (color.ordinal() + 1) * words; w++) {
+			count += Long.bitCount(this.bits[w]);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the Zobrist hash of the board
+	 */
+	public long getHash() {
+		return this.hash;
+	}
+
+	/**
+	 * Create a board to play on from this snapshot, for example to compute a hint.
+	 * @return a new board with the balls of this snapshot
+	 */
+	public Board toBoard() {
+		return new Board(this);
+	}
+
+	/**
+	 * Copy the bitboards of this snapshot into a board.
+	 * @param bits the bitboards of the board
+	 */
+	void copyTo(long[] bits) {
+		System.arraycopy(this.bits, 0, bits, 0, this.bits.length);
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.hash ^ (this.hash >>> 32));
+	}
+
+	/**
+	 * Two snapshots are equal when they have the same size and the same balls on the same fields.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof BoardSnapshot)) {
+			return false;
+		}
+		BoardSnapshot other = (BoardSnapshot) obj;
+		return this.geometry.equals(other.geometry) && Arrays.equals(this.bits, other.bits);
+	}
+
+}
@@ -0,0 +1,237 @@
+package collecto;
+
+import java.util.Arrays;
+
+import utils.Colors;
+
+/**
+ * The number of balls of each color, for example the balls a player has collected
+ * or the balls a move removes. The counts are kept in an int array indexed by color
+ * ordinal, so scoring and comparing moves do not box or hash.
+ * There is room for the colors of Colors, the array grows when a board with more
+ * colors (see Geometry) gives balls of a higher ordinal.
+ */
+public class ColorCounts {
+
+	private static final Colors[] COLORS = Colors.values();
+
+	/* The number of balls, indexed by color ordinal (0 is EMPTY and stays 0) */
+	private int[] counts;
+
+	/**
+	 * Creates counts of zero balls of every color.
+	 */
+	public ColorCounts() {
+		this(COLORS.length - 1);
+	}
+
+	/**
+	 * Creates counts of zero balls with room for the given number of colors.
+	 * @param colors the number of colors, see Geometry#getColors()
+	 */
+	public ColorCounts(int colors) {
+		this.counts = new int[colors + 1];
+	}
+
+	/**
+	 * Creates a copy of the given counts.
+	 * @param other the counts to copy
+	 */
+	public ColorCounts(ColorCounts other) {
+		this.counts = other.counts.clone();
+	}
+
+	/**
+	 * @return the number of balls of the given color
+	 */
+	public int get(Colors color) {
+		return this.get(color.ordinal());
+	}
+
+	/**
+	 * @param color the ordinal of a color
+	 * @return the number of balls of the given color
+	 */
+	public int get(int color) {
+		return color < this.counts.length ? this.counts[color] : 0;
+	}
+
+	/**
+	 * Set the number of balls of a color.
+	 * @requires color != Colors.EMPTY
+	 */
+	public void set(Colors color, int amount) {
+		this.set(color.ordinal(), amount);
+	}
+
+	/**
+	 * Set the number of balls of a color by ordinal.
+	 * @requires 0 < color
+	 */
+	void set(int color, int amount) {
+		this.ensureColors(color);
+		this.counts[color] = amount;
+	}
+
+	/**
+	 * Copy the given counts into these counts.
+	 * @param other the counts to copy
+	 */
+	public void set(ColorCounts other) {
+		if (this.counts.length != other.counts.length) {
+			this.counts = new int[other.counts.length];
+		}
+		System.arraycopy(other.counts, 0, this.counts, 0, this.counts.length);
+	}
+
+	/**
+	 * Add balls of one color.
+	 * @requires color != Colors.EMPTY
+	 */
+	public void add(Colors color, int amount) {
+		this.set(color.ordinal(), this.get(color) + amount);
+	}
+
+	/**
+	 * Add the balls of the given counts, for example the balls a move removes.
+	 * @param other the counts to add
+	 */
+	public void add(ColorCounts other) {
+		this.ensureColors(other.counts.length - 1);
+		for (int c = 1; c < other.counts.length; c++) {
+			this.counts[c] += other.counts[c];
+		}
+	}
+
+	/**
+	 * Set every count back to zero.
+	 */
+	public void clear() {
+		Arrays.fill(this.counts, 0);
+	}
+
+	/**
+	 * @return true if there is no ball of any color
+	 */
+	public boolean isEmpty() {
+		for (int c = 1; c < this.counts.length; c++) {
+			if (this.counts[c] != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return the total number of balls
+	 */
+	public int getTotal() {
+		int total = 0;
+		for (int c = 1; c < this.counts.length; c++) {
+			total += this.counts[c];
+		}
+		return total;
+	}
+
+	/**
+	 * Calculate the score, get 1 point for every 3 balls of each color.
+	 * @return the score
+	 */
+	public int getScore() {
+		int score = 0;
+		for (int c = 1; c < this.counts.length; c++) {
+			score += this.counts[c] / 3;
+		}
+		return score;
+	}
+
+	/**
+	 * Calculate the score these counts would have after adding the given balls,
+	 * without changing these counts.
+	 * @param gains the balls to add
+	 * @return the score of the sum
+	 */
+	public int getScoreWith(ColorCounts gains) {
+		int score = 0;
+		for (int c = 1; c < this.counts.length; c++) {
+			score += (this.counts[c] + gains.get(c)) / 3;
+		}
+		for (int c = this.counts.length; c < gains.counts.length; c++) {
+			score += gains.counts[c] / 3;
+		}
+		return score;
+	}
+
+	/**
+	 * Count the colors of which the given balls take these counts from 6 to 8,
+	 * so that the last two balls of the color do not give a point.
+	 * @param gains the balls to add
+	 * @return the number of such colors
+	 */
+	public int countSixToEight(ColorCounts gains) {
+		int colors = 0;
+		for (int c = 1; c < this.counts.length; c++) {
+			if (this.counts[c] == 6 && gains.get(c) == 2) {
+				colors++;
+			}
+		}
+		return colors;
+	}
+
+	/**
+	 * Make room for the colors up to the given ordinal.
+	 */
+	private void ensureColors(int color) {
+		if (color >= this.counts.length) {
+			this.counts = Arrays.copyOf(this.counts, color + 1);
+		}
+	}
+
+	/**
+	 * Two counts are equal when they have the same number of balls of every color,
+	 * no matter for how many colors they have room.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof ColorCounts)) {
+			return false;
+		}
+		ColorCounts other = (ColorCounts) obj;
+		int length = Math.max(this.counts.length, other.counts.length);
+		for (int c = 1; c < length; c++) {
+			if (this.get(c) != other.get(c)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 1;
+		for (int c = 1; c < this.counts.length; c++) {
+			if (this.counts[c] != 0) {
+				hash = 31 * hash + c * 257 + this.counts[c];
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * @return the colors that have balls and their amount, for example {BLUE=3, YELLOW=4}
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder("{");
+		for (int c = 1; c < this.counts.length; c++) {
+			if (this.counts[c] != 0) {
+				if (sb.length() > 1) {
+					sb.append(", ");
+				}
+				sb.append(c < COLORS.length ? COLORS[c].toString() : "COLOR" + c).append('=').append(this.counts[c]);
+			}
+		}
+		return sb.append('}').toString();
+	}
+
+}
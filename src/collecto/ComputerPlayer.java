@@ -11,12 +11,23 @@ public class ComputerPlayer extends Player {
 			this.strategy = new SmartStrategy(this);
 		} else if (type == 2) {
 			this.strategy = new NaiveStrategy();
+		} else if (type == 4) {
+			this.strategy = new AlphaBetaStrategy(this);
+		} else if (type == 5) {
+			this.strategy = new MctsStrategy(this);
 		}
 
 		this.setName(strategy.getName() + "-AI-" + name);
 	}
 	
+	/**
+	 * Replace the strategy, the old one is closed.
+	 * @param strategy the new strategy
+	 */
 	public void setStrategy(Strategy strategy) {
+		if (this.strategy != strategy) {
+			this.strategy.close();
+		}
 		this.strategy = strategy;
 	}
 	
@@ -25,7 +36,7 @@ public class ComputerPlayer extends Player {
 	}
 
 	@Override
-	public String determineMove(Board board) {
+	public int determineMove(Board board) {
 		return this.strategy.determineMove(board);
 	}
 	
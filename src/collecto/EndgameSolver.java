@@ -0,0 +1,191 @@
+package collecto;
+
+/**
+ * Solves a position with few balls left exactly: it searches the whole game tree with
+ * alpha-beta and finds the moves that end the game with the best score difference for
+ * the player to move, against any reply.
+ * Results are memoized in a TranspositionTable keyed by the board and the balls of the
+ * player to move; the balls of the other player follow from them, as every ball is either
+ * on the board or collected by one of the players. A result stays true for as long as the
+ * board size does not change, so the memo is kept from one move to the next.
+ */
+public class EndgameSolver {
+
+	public static final int DEFAULT_THRESHOLD = 16; // Balls on the board at or below which a position is solved
+
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+	private static final int MEMO_BITS = 20;
+
+	private final int threshold;
+	private TranspositionTable memo; // Made on the first solve, so a solver that is never used does not hold it
+
+	/* Per ply of the search */
+	private MoveCache[] moveCaches = new MoveCache[0];
+	private MoveList[] moveLists;
+	private MoveUndo[] undos;
+
+	/* The state of the search: the balls of both players (0 is the player to move at the root) and their scores */
+	private Geometry geometry;
+	private Board board;
+	private final SideCounts sides = new SideCounts();
+	private int bestMove = Move.NONE;
+	private long nodes;
+
+	/**
+	 * Creates a solver for positions with at most DEFAULT_THRESHOLD balls.
+	 */
+	public EndgameSolver() {
+		this(DEFAULT_THRESHOLD);
+	}
+
+	/**
+	 * Creates a solver.
+	 * @param threshold the number of balls on the board at or below which a position is solved
+	 */
+	public EndgameSolver(int threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * @return the number of balls on the board at or below which a position is solved
+	 */
+	public int getThreshold() {
+		return this.threshold;
+	}
+
+	/**
+	 * @return true if the board has few enough balls to be solved
+	 */
+	public boolean canSolve(Board board) {
+		return board.getBallCount() <= this.threshold;
+	}
+
+	/**
+	 * Solve a position.
+	 * @param board the board, it is left as it is
+	 * @param mine the balls of the player to move
+	 * @return the score of the player to move minus the score of the other player at the end
+	 * 		of the game, if both play perfectly
+	 */
+	public int solve(Board board, ColorCounts mine) {
+		this.start(board, mine);
+		int value = this.search(0, -INFINITY, INFINITY);
+		this.board = null;
+		return value;
+	}
+
+	/**
+	 * @return a perfect move of the last solved position, or Move.NONE if it had no move
+	 */
+	public int getBestMove() {
+		return this.bestMove;
+	}
+
+	/**
+	 * @return the number of positions the last solve searched
+	 */
+	public long getNodes() {
+		return this.nodes;
+	}
+
+	/**
+	 * Set up the search of a board: the balls of both players and the tables.
+	 */
+	private void start(Board board, ColorCounts mine) {
+		Geometry geometry = board.getGeometry();
+		if (this.memo == null) {
+			this.memo = new TranspositionTable(MEMO_BITS);
+		}
+		if (!geometry.equals(this.geometry)) {
+			this.geometry = geometry;
+			this.memo.clear();
+		}
+		// Every move removes at least two balls
+		int plies = board.getBallCount() / 2 + 2;
+		if (this.moveCaches.length < plies) {
+			this.moveCaches = new MoveCache[plies];
+			this.moveLists = new MoveList[plies];
+			this.undos = new MoveUndo[plies];
+			for (int ply = 0; ply < plies; ply++) {
+				this.moveCaches[ply] = new MoveCache();
+				this.moveLists[ply] = new MoveList();
+				this.undos[ply] = new MoveUndo();
+			}
+		}
+
+		this.board = board;
+		this.sides.start(board, mine);
+		this.memo.newSearch();
+		this.bestMove = Move.NONE;
+		this.nodes = 0;
+	}
+
+	/**
+	 * Negamax alpha-beta search to the end of the game.
+	 * @param ply the number of plies from the root, the side to move is ply % 2
+	 * @return the final score difference for the side to move if it is between alpha and beta,
+	 * 		otherwise a bound on the side of the window it is on
+	 */
+	private int search(int ply, int alpha, int beta) {
+		this.nodes++;
+		int side = ply & 1;
+		long key = this.board.getHash() ^ this.sides.keys[side];
+		int memoMove = Move.NONE;
+		int index = this.memo.probe(key);
+		if (index != -1) {
+			memoMove = this.memo.getMove(index);
+			int value = this.memo.getValue(index);
+			int flag = this.memo.getFlag(index);
+			if (ply > 0 && (flag == TranspositionTable.EXACT
+					|| flag == TranspositionTable.LOWER && value >= beta
+					|| flag == TranspositionTable.UPPER && value <= alpha)) {
+				return value;
+			}
+		}
+
+		MoveList moves = this.moveLists[ply];
+		this.moveCaches[ply].getPossibleMoves(this.board, moves);
+		if (moves.isEmpty()) {
+			return this.sides.difference(side);
+		}
+
+		// The move of the memo first, it is the best move of an earlier search of the position
+		int first = Math.max(0, moves.indexOf(memoMove));
+		int alphaOrig = alpha;
+		int best = -INFINITY;
+		int bestMove = Move.NONE;
+		for (int k = 0; k < moves.size(); k++) {
+			int i = k == 0 ? first : k <= first ? k - 1 : k;
+			int move = moves.get(i);
+			ColorCounts gains = moves.getGains(i);
+
+			this.board.makeMove(move, this.undos[ply]);
+			this.sides.addGains(side, gains, 1);
+			int value = -this.search(ply + 1, -beta, -alpha);
+			this.sides.addGains(side, gains, -1);
+			this.board.undoMove(this.undos[ply]);
+
+			if (value > best) {
+				best = value;
+				bestMove = move;
+			}
+			if (best > alpha) {
+				alpha = best;
+			}
+			if (alpha >= beta) {
+				break;
+			}
+		}
+
+		if (ply == 0) {
+			this.bestMove = bestMove;
+		}
+		// The number of balls left stands for the size of the subtree, so bigger subtrees are kept
+		int flag = best <= alphaOrig ? TranspositionTable.UPPER
+				: best >= beta ? TranspositionTable.LOWER : TranspositionTable.EXACT;
+		this.memo.store(key, this.board.getBallCount(), best, flag, bestMove);
+		return best;
+	}
+
+}
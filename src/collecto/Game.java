@@ -76,15 +76,8 @@ public class Game {
     	while (!board.gameOver()) {
     		update();
 
-	    	String moveStr = players[current].determineMove(board);
-	    	String[] moveArr = moveStr.split("~");
-
-	        if (moveArr.length == 1) {
-	        	players[current].setColorMap(board.setMove(Integer.parseInt(moveArr[0])));
-	        } else if (moveArr.length == 2) {
-	        	board.moveBalls(Integer.parseInt(moveArr[0]));
-	        	players[current].setColorMap(board.setMove(Integer.parseInt(moveArr[1])));
-	        }
+	    	int move = players[current].determineMove(board);
+	    	players[current].makeMove(board, move);
 
 	    	current = current == 0 ? 1 : 0;
     	}
@@ -103,7 +96,7 @@ public class Game {
             String.format("%s has %d point(s). %s\n", 
                           players[i].getName(), 
                           players[i].getScore(), 
-                          players[i].getColorMap())
+                          players[i].getColorCounts())
             );
         }
         MessageHandler.printMessage(board.toString());
@@ -0,0 +1,217 @@
+package collecto;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utils.Colors;
+
+/**
+ * The size of a game: a board of dim x dim fields with an EMPTY center field and
+ * `each` balls of every one of the colors. The default is the 7x7 game with six colors
+ * of 8 balls; bigger games (e.g. 15x15 or 31x31 with more colors) are used to measure how
+ * search and move generation scale.
+ * A geometry also holds everything a Board precomputes for its size: the tables of the
+ * push kernel and the Zobrist keys. Boards of the same size share one instance.
+ *
+ * Fields are numbered x * dim + y. A color ordinal c (1 to colors, 0 is EMPTY) is stored in
+ * words [c * words, (c + 1) * words) of a board, each word holding 64 fields.
+ * A push has the number direction * dim + line with direction 0 left, 1 right, 2 top,
+ * 3 bottom, so there are 4 * dim pushes.
+ */
+public final class Geometry {
+
+	public static final int MAX_DIM = Integer.SIZE - 1; // A line has to fit in an int
+
+	/* The 7x7 game with the six colors of Colors */
+	public static final Geometry DEFAULT = new Geometry(Board.DIM, Colors.values().length - 1, Board.EACH);
+
+	/* The geometries made by of(), indexed by (dim << 16 | colors) */
+	private static final Map<Integer, Geometry> SIZES = new ConcurrentHashMap<>();
+
+	private final int dim;
+	private final int colors;
+	private final int each;
+	private final int fields;
+	private final int pushes;
+	private final int words;
+
+	/* The number of longs of all the bitboards of a board, (colors + 1) * words */
+	final int length;
+
+	/* All the fields of a line, as a word of dim bits */
+	final int line;
+
+	/* Per push: the first field, the stride and the offset to the lines next to it, see Board.push */
+	final int[] start;
+	final int[] stride;
+	final int[] across;
+	/* Per push: bit 0 is set if there is a line before the line of the push, bit 1 if there is one after it */
+	final int[] acrossLines;
+	/* Per push: whether all the balls of a chain take the balls of the lines next to it (false for left pushes) */
+	final boolean[] trailingAcross;
+	/* Per push: the words that hold a field of its line, and the fields of the line in each word (push * words + word) */
+	final int[][] lineWords;
+	final long[] lineMask;
+	/* Whether lines are short enough for the LineTable */
+	final boolean lineTable;
+
+	final Zobrist zobrist;
+
+	/**
+	 * Creates a geometry.
+	 * @requires dim is odd, 3 <= dim && dim <= MAX_DIM, colors >= 2, colors * each == dim * dim - 1
+	 * @param dim the number of rows and columns
+	 * @param colors the number of colors
+	 * @param each the number of balls of every color
+	 * @throws IllegalArgumentException if the numbers do not make a board
+	 */
+	public Geometry(int dim, int colors, int each) {
+		if (dim < 3 || dim > MAX_DIM || dim % 2 == 0) {
+			throw new IllegalArgumentException("The dimension must be odd and between 3 and " + MAX_DIM);
+		}
+		if (colors < 2 || each < 1 || colors * each != dim * dim - 1) {
+			throw new IllegalArgumentException(colors + " colors of " + each + " balls do not fill "
+					+ dim + "x" + dim + " fields around an empty center");
+		}
+
+		this.dim = dim;
+		this.colors = colors;
+		this.each = each;
+		this.fields = dim * dim;
+		this.pushes = 4 * dim;
+		this.words = (this.fields + Long.SIZE - 1) / Long.SIZE;
+		this.length = (colors + 1) * this.words;
+		this.line = (1 << dim) - 1;
+
+		this.start = new int[this.pushes];
+		this.stride = new int[this.pushes];
+		this.across = new int[this.pushes];
+		this.acrossLines = new int[this.pushes];
+		this.trailingAcross = new boolean[this.pushes];
+		this.lineWords = new int[this.pushes][];
+		this.lineMask = new long[this.pushes * this.words];
+		this.lineTable = dim <= LineTable.LENGTH;
+
+		for (int move = 0; move < this.pushes; move++) {
+			int direction = move / dim;
+			int line = move % dim;
+			boolean horizontal = direction < 2;
+			boolean towardsFirst = direction == 0 || direction == 2;
+			int step = horizontal ? 1 : dim;
+
+			this.start[move] = (horizontal ? line * dim : line) + (towardsFirst ? 0 : (dim - 1) * step);
+			this.stride[move] = towardsFirst ? step : -step;
+			this.across[move] = horizontal ? dim : 1;
+			this.acrossLines[move] = (line > 0 ? 1 : 0) | (line < dim - 1 ? 2 : 0);
+			this.trailingAcross[move] = direction != 0;
+
+			int used = 0;
+			for (int k = 0, field = this.start[move]; k < dim; k++, field += this.stride[move]) {
+				this.lineMask[move * this.words + field / Long.SIZE] |= 1L << field;
+			}
+			int[] touched = new int[this.words];
+			for (int w = 0; w < this.words; w++) {
+				if (this.lineMask[move * this.words + w] != 0) {
+					touched[used++] = w;
+				}
+			}
+			this.lineWords[move] = Arrays.copyOf(touched, used);
+		}
+
+		this.zobrist = new Zobrist(this.fields, colors, each);
+	}
+
+	/**
+	 * Creates the geometry of a dim x dim board with the given number of colors.
+	 * @requires (dim * dim - 1) % colors == 0
+	 * @return the geometry, the same instance for every call with the same size; DEFAULT for
+	 * 		the 7x7 game with six colors
+	 * @throws IllegalArgumentException if the colors do not fill the board evenly
+	 */
+	public static Geometry of(int dim, int colors) {
+		if (dim == DEFAULT.dim && colors == DEFAULT.colors) {
+			return DEFAULT;
+		}
+		if (colors < 1 || (dim * dim - 1) % colors != 0) {
+			throw new IllegalArgumentException(dim * dim - 1 + " balls cannot be split over " + colors + " colors");
+		}
+		return SIZES.computeIfAbsent(dim << 16 | colors, key -> new Geometry(dim, colors, (dim * dim - 1) / colors));
+	}
+
+	/**
+	 * @return the number of rows and columns
+	 */
+	public int getDim() {
+		return this.dim;
+	}
+
+	/**
+	 * @return the number of colors, color ordinals go from 1 to getColors()
+	 */
+	public int getColors() {
+		return this.colors;
+	}
+
+	/**
+	 * @return the number of balls of every color
+	 */
+	public int getEach() {
+		return this.each;
+	}
+
+	/**
+	 * @return the number of fields, dim * dim
+	 */
+	public int getFields() {
+		return this.fields;
+	}
+
+	/**
+	 * @return the number of different pushes, 4 * dim
+	 */
+	public int getPushes() {
+		return this.pushes;
+	}
+
+	/**
+	 * @return the number of longs a bitboard of one color takes
+	 */
+	public int getWords() {
+		return this.words;
+	}
+
+	/**
+	 * @return the field in the center, which is EMPTY at the start
+	 */
+	public int getCenter() {
+		return (this.dim / 2) * this.dim + this.dim / 2;
+	}
+
+	/**
+	 * @return the Zobrist keys of boards of this size
+	 */
+	public Zobrist getZobrist() {
+		return this.zobrist;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof Geometry)) {
+			return false;
+		}
+		Geometry other = (Geometry) obj;
+		return this.dim == other.dim && this.colors == other.colors && this.each == other.each;
+	}
+
+	@Override
+	public int hashCode() {
+		return (this.dim * 31 + this.colors) * 31 + this.each;
+	}
+
+	@Override
+	public String toString() {
+		return this.dim + "x" + this.dim + ", " + this.colors + " colors of " + this.each;
+	}
+
+}
@@ -9,23 +9,17 @@ public class HumanPlayer extends Player {
 	}
 	
 	//@Override
-	public String determineMove(Board board) {
-        String moveStr = null;
-        String[] moveArr;
+	public int determineMove(Board board) {
+        int move = Move.NONE;
         boolean valid = false;
         
         while (!valid) {
         	String prompt = "> " + getName() + ", what is your choice? ";
             System.out.println(prompt);
             
-            moveStr = TextIO.getln();
-            moveArr = moveStr.split("~");
-
-            if (moveArr.length == 1) {
-            	valid = board.isValidSingleMove(Integer.parseInt(moveArr[0]));
-            } else if (moveArr.length == 2) {
-            	valid = board.isValidDoubleMove(Integer.parseInt(moveArr[0]), Integer.parseInt(moveArr[1]));
-            }
+            String moveStr = TextIO.getln();
+            move = Move.parse(board.getGeometry(), moveStr);
+            valid = board.isValidMove(move);
 
             if (!valid) {
                 prompt = "ERROR: " + moveStr + " is not a valid move.";
@@ -33,7 +27,7 @@ public class HumanPlayer extends Player {
             }
         }
 
-        return moveStr;
+        return move;
 	}
 
 }
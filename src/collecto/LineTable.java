@@ -0,0 +1,72 @@
+package collecto;
+
+/**
+ * Precomputed pushes of a single row or column.
+ * A line of the board is a word of DIM bits, bit k stands for the k-th field of the line.
+ * The board gathers a line in push order, so every push moves the balls towards field 0.
+ * Where the balls of a line end up after a push only depends on which fields hold a ball,
+ * so every table is indexed by the occupancy of the line. The balls of one color are a
+ * subset of the occupancy, their new position is found with one lookup of (occupancy, subset).
+ */
+public class LineTable {
+
+	public static final int LENGTH = Board.DIM;
+	public static final int LINE = (1 << LENGTH) - 1; // All the fields of a line
+
+	/* The new position of a subset of the balls, indexed by (occupancy << LENGTH | subset) */
+	private static final byte[] SLIDE = new byte[1 << (2 * LENGTH)];
+
+	/* The new position of the balls that move, indexed by occupancy */
+	private static final byte[] MOVED = new byte[1 << LENGTH];
+
+	static {
+		for (int occ = 0; occ <= LINE; occ++) {
+			// The k-th ball of the line lands on field k
+			int[] target = new int[LENGTH];
+			int moved = 0;
+			int next = 0;
+			for (int k = 0; k < LENGTH; k++) {
+				if ((occ & (1 << k)) != 0) {
+					target[k] = next;
+					if (next != k) {
+						moved |= 1 << next;
+					}
+					next++;
+				}
+			}
+			MOVED[occ] = (byte) moved;
+
+			// Every subset of the occupancy moves the same way
+			for (int sub = occ; ; sub = (sub - 1) & occ) {
+				int slid = 0;
+				for (int k = 0; k < LENGTH; k++) {
+					if ((sub & (1 << k)) != 0) {
+						slid |= 1 << target[k];
+					}
+				}
+				SLIDE[occ << LENGTH | sub] = (byte) slid;
+				if (sub == 0) {
+					break;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @param occ the fields of the line that hold a ball
+	 * @param sub a subset of occ, e.g. the balls of one color
+	 * @return the fields the balls of sub end up on after the push
+	 */
+	public static int slide(int occ, int sub) {
+		return SLIDE[occ << LENGTH | sub] & LINE;
+	}
+
+	/**
+	 * @param occ the fields of the line that hold a ball
+	 * @return the fields of the balls that have been moved, after the push; 0 if no ball can move
+	 */
+	public static int moved(int occ) {
+		return MOVED[occ] & LINE;
+	}
+
+}
@@ -0,0 +1,520 @@
+package collecto;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import utils.Rng;
+
+/**
+ * Monte Carlo tree search: every iteration walks down the tree by UCT, adds the children of
+ * the node it ends on, and plays the game out with random moves. The move that has been
+ * visited most often is played.
+ * Every thread searches its own tree on its own copy of the board (root parallelism), and
+ * the visits of the moves of the roots are added up. A tree is an arena of primitive arrays
+ * with a fixed number of nodes, so memory does not grow with the number of games.
+ * After a move the tree is kept: on the next turn the subtree of the reply of the opponent
+ * is copied to the front of a second arena and becomes the new tree.
+ */
+public class MctsStrategy implements Strategy {
+
+	public static final int DEFAULT_PLAYOUTS = 4000; // Playouts per move, over all threads
+	public static final long DEFAULT_MILLIS = 1000; // Milliseconds per move
+	public static final int DEFAULT_CAPACITY = 1 << 16; // Nodes per tree
+
+	private static final double EXPLORATION = Math.sqrt(2);
+
+	private final Player player;
+	private final int maxPlayouts;
+	private final long maxMillis;
+	private final ForkJoinPool pool; // Null when there is only one thread
+	private final Worker[] workers;
+
+	private int lastMove = Move.NONE; // The move played the last time, to find the reply in the trees
+	private int[] visits = new int[0]; // Per packed move, the visits of the root child of the move in all trees
+	private final MoveCache moveCache = new MoveCache(); // For a move when no root child was visited
+	private final MoveList moves = new MoveList();
+
+	/**
+	 * Creates a strategy that searches one tree on the calling thread, DEFAULT_PLAYOUTS playouts
+	 * or DEFAULT_MILLIS milliseconds per move, with DEFAULT_CAPACITY nodes.
+	 * @param player the player the strategy plays for
+	 */
+	public MctsStrategy(Player player) {
+		this(player, 1, DEFAULT_PLAYOUTS, DEFAULT_MILLIS, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a strategy.
+	 * @requires parallelism >= 1 && maxPlayouts >= 1 && capacity >= 1
+	 * @param player the player the strategy plays for
+	 * @param parallelism the number of threads, each with its own tree; with more than one they
+	 * 		run on a pool of their own until the strategy is closed
+	 * @param maxPlayouts the number of playouts per move, over all threads
+	 * @param maxMillis the number of milliseconds per move
+	 * @param capacity the number of nodes of a tree
+	 */
+	public MctsStrategy(Player player, int parallelism, int maxPlayouts, long maxMillis, int capacity) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1");
+		}
+		this.player = player;
+		this.maxPlayouts = maxPlayouts;
+		this.maxMillis = maxMillis;
+		this.pool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+		this.workers = new Worker[parallelism];
+		for (int i = 0; i < parallelism; i++) {
+			this.workers[i] = new Worker(capacity, Rng.nextSeed());
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "MCTS";
+	}
+
+	/**
+	 * Stop the threads of the trees.
+	 */
+	@Override
+	public void close() {
+		if (this.pool != null) {
+			this.pool.shutdown();
+		}
+	}
+
+	/**
+	 * @return the number of threads, each with its own tree
+	 */
+	public int getParallelism() {
+		return this.workers.length;
+	}
+
+	/**
+	 * @return the number of playouts of the last move, over all threads
+	 */
+	public long getPlayouts() {
+		long playouts = 0;
+		for (Worker worker : this.workers) {
+			playouts += worker.playouts;
+		}
+		return playouts;
+	}
+
+	/**
+	 * @return the number of playouts the trees had from earlier moves at the start of the last move
+	 */
+	public long getReusedVisits() {
+		long reused = 0;
+		for (Worker worker : this.workers) {
+			reused += worker.reused;
+		}
+		return reused;
+	}
+
+	/**
+	 * Search the board until the budget is used up.
+	 * @param board the board, it is left as it is
+	 * @return the move that has been visited most often, or the first legal move if a tree is too
+	 * 		small for the children of the root, or Move.NONE if there is no move
+	 */
+	@Override
+	public int determineMove(Board board) {
+		if (!board.hasAnyLegalMove()) {
+			return Move.NONE;
+		}
+
+		Geometry geometry = board.getGeometry();
+		long deadline = System.nanoTime() + this.maxMillis * 1000000L;
+		int playouts = (this.maxPlayouts + this.workers.length - 1) / this.workers.length;
+		for (Worker worker : this.workers) {
+			worker.start(board, this.player.getColorCounts(), this.lastMove, playouts, deadline);
+		}
+		if (this.pool == null) {
+			this.workers[0].run();
+		} else {
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[this.workers.length];
+			for (int w = 0; w < tasks.length; w++) {
+				tasks[w] = this.pool.submit(this.workers[w]);
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+
+		// The move with the most visits over all trees, the first one of a tie
+		if (this.visits.length != Move.count(geometry)) {
+			this.visits = new int[Move.count(geometry)];
+		}
+		Arrays.fill(this.visits, 0);
+		for (Worker worker : this.workers) {
+			worker.addRootVisits(this.visits);
+		}
+		int best = Move.NONE;
+		for (int move = 0; move < this.visits.length; move++) {
+			if (this.visits[move] > 0 && (best == Move.NONE || this.visits[move] > this.visits[best])) {
+				best = move;
+			}
+		}
+		if (best == Move.NONE) {
+			this.moveCache.getPossibleMoves(board, this.moves);
+			best = this.moves.get(0);
+		}
+
+		this.lastMove = best;
+		return best;
+	}
+
+	/**
+	 * The nodes of a tree in primitive arrays. The children of a node are next to each other,
+	 * from firstChild to firstChild + childCount - 1, and node 0 is the root.
+	 */
+	static final class Tree {
+		static final byte UNEXPANDED = 0;
+		static final byte EXPANDED = 1;
+		static final byte TERMINAL = 2; // The game is over after the move of the node
+
+		final int[] moves; // The move that leads to the node
+		final int[] firstChild;
+		final int[] childCount;
+		final int[] visits;
+		final float[] wins; // For the player who made the move of the node, a draw is half a win
+		final long[] hashes; // The hash of the board after the move, 0 until the node is visited
+		final byte[] states;
+		int size;
+
+		Tree(int capacity) {
+			this.moves = new int[capacity];
+			this.firstChild = new int[capacity];
+			this.childCount = new int[capacity];
+			this.visits = new int[capacity];
+			this.wins = new float[capacity];
+			this.hashes = new long[capacity];
+			this.states = new byte[capacity];
+		}
+
+		/**
+		 * Make room for nodes at the end of the arena, they are set to unvisited.
+		 * @return the index of the first node, or -1 if the arena is full
+		 */
+		int add(int count) {
+			if (this.size + count > this.moves.length) {
+				return -1;
+			}
+			int first = this.size;
+			for (int node = first; node < first + count; node++) {
+				this.firstChild[node] = 0;
+				this.childCount[node] = 0;
+				this.visits[node] = 0;
+				this.wins[node] = 0;
+				this.hashes[node] = 0;
+				this.states[node] = UNEXPANDED;
+			}
+			this.size += count;
+			return first;
+		}
+
+		/**
+		 * Copy one node of another tree, without its children.
+		 */
+		void copy(Tree from, int node, int to) {
+			this.moves[to] = from.moves[node];
+			this.visits[to] = from.visits[node];
+			this.wins[to] = from.wins[node];
+			this.hashes[to] = from.hashes[node];
+			this.states[to] = from.states[node];
+			this.firstChild[to] = 0;
+			this.childCount[to] = 0;
+		}
+	}
+
+	/**
+	 * Searches one tree on its own copy of the board.
+	 */
+	private static final class Worker implements Runnable {
+		private Tree tree;
+		private Tree spare; // The arena the kept subtree is copied into
+		private final int[] copied; // Per node of spare, the node of tree it is a copy of
+		private final SplittableRandom random;
+		private final MoveCache moveCache = new MoveCache();
+		private final MoveList moveList = new MoveList();
+
+		/* The state of the search: the balls of both players (0 is the player at the root) and their scores */
+		private Geometry geometry;
+		private Board board;
+		private final SideCounts sides = new SideCounts();
+		private MoveUndo[] undos = new MoveUndo[0]; // One per ply, of the walk down the tree and the playout
+		private int[] path = new int[0];
+		private int[] order = new int[0]; // The pushes in the order they are tried in a playout
+
+		private int maxPlayouts;
+		private long deadline;
+		long playouts;
+		long reused;
+
+		Worker(int capacity, long seed) {
+			this.tree = new Tree(capacity);
+			this.spare = new Tree(capacity);
+			this.copied = new int[capacity];
+			this.random = new SplittableRandom(seed);
+		}
+
+		/**
+		 * Set up the search of a turn, keeping the subtree of the board if the tree has it.
+		 * @param lastMove the move played from the root of the tree the last time
+		 */
+		void start(Board board, ColorCounts mine, int lastMove, int maxPlayouts, long deadline) {
+			Geometry geometry = board.getGeometry();
+			if (!geometry.equals(this.geometry)) {
+				this.geometry = geometry;
+				// Every move removes at least two balls
+				int plies = geometry.getFields() / 2 + 2;
+				this.undos = new MoveUndo[plies];
+				for (int ply = 0; ply < plies; ply++) {
+					this.undos[ply] = new MoveUndo();
+				}
+				this.path = new int[plies];
+				this.order = new int[geometry.getPushes()];
+				for (int push = 0; push < this.order.length; push++) {
+					this.order[push] = push;
+				}
+				this.tree.size = 0;
+			}
+
+			this.board = board.deepCopy();
+			this.sides.start(board, mine);
+
+			int kept = this.findReply(lastMove, board.getHash());
+			if (kept != -1) {
+				this.keep(kept);
+				this.reused = this.tree.visits[0];
+			} else {
+				this.tree.size = 0;
+				this.tree.add(1);
+				this.tree.moves[0] = Move.NONE;
+				this.tree.hashes[0] = board.getHash();
+				this.reused = 0;
+			}
+			this.maxPlayouts = maxPlayouts;
+			this.deadline = deadline;
+			this.playouts = 0;
+		}
+
+		/**
+		 * @return the node two plies below the root after the last move and the reply that lead
+		 * 		to the board with the given hash, or -1 if the tree does not have it
+		 */
+		private int findReply(int lastMove, long hash) {
+			Tree t = this.tree;
+			if (t.size == 0 || lastMove == Move.NONE || t.states[0] != Tree.EXPANDED) {
+				return -1;
+			}
+			for (int child = t.firstChild[0]; child < t.firstChild[0] + t.childCount[0]; child++) {
+				if (t.moves[child] == lastMove && t.states[child] == Tree.EXPANDED) {
+					for (int reply = t.firstChild[child]; reply < t.firstChild[child] + t.childCount[child]; reply++) {
+						if (t.hashes[reply] == hash) {
+							return reply;
+						}
+					}
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * Make a node the root: copy its subtree to the front of the spare arena, level by level,
+		 * and swap the arenas.
+		 */
+		private void keep(int node) {
+			Tree from = this.tree;
+			Tree to = this.spare;
+			to.size = 1;
+			to.copy(from, node, 0);
+			this.copied[0] = node;
+			for (int next = 0; next < to.size; next++) {
+				int old = this.copied[next];
+				if (from.states[old] == Tree.EXPANDED) {
+					int count = from.childCount[old];
+					int first = to.size;
+					to.size += count;
+					to.firstChild[next] = first;
+					to.childCount[next] = count;
+					for (int k = 0; k < count; k++) {
+						to.copy(from, from.firstChild[old] + k, first + k);
+						this.copied[first + k] = from.firstChild[old] + k;
+					}
+				}
+			}
+			this.spare = from;
+			this.tree = to;
+		}
+
+		@Override
+		public void run() {
+			do {
+				this.iterate();
+				this.playouts++;
+			} while (this.playouts < this.maxPlayouts && ((this.playouts & 63) != 0 || System.nanoTime() < this.deadline));
+		}
+
+		/**
+		 * One iteration: walk down, expand, play out and update the nodes of the walk.
+		 */
+		private void iterate() {
+			Tree t = this.tree;
+			int node = 0;
+			int depth = 0;
+			this.path[0] = 0;
+			while (t.states[node] == Tree.EXPANDED && depth < this.undos.length - 1) {
+				node = this.select(node);
+				this.play(node, depth++);
+				this.path[depth] = node;
+			}
+			if (t.states[node] == Tree.UNEXPANDED && (node == 0 || t.visits[node] > 0) && depth < this.undos.length - 1) {
+				this.expand(node);
+				if (t.states[node] == Tree.EXPANDED) {
+					node = t.firstChild[node] + this.random.nextInt(t.childCount[node]);
+					this.play(node, depth++);
+					this.path[depth] = node;
+				}
+			}
+
+			int difference = this.playout(depth);
+			for (int ply = depth; ply >= 0; ply--) {
+				int n = this.path[ply];
+				t.visits[n]++;
+				if (ply > 0) {
+					// The move of the node has been made by the side to move one ply up
+					int side = (ply - 1) & 1;
+					int result = side == 0 ? difference : -difference;
+					t.wins[n] += result > 0 ? 1 : result == 0 ? 0.5f : 0;
+				}
+			}
+			for (int ply = depth - 1; ply >= 0; ply--) {
+				this.undo(ply);
+			}
+		}
+
+		/**
+		 * @return the child with the highest UCT value, or the first child that has not been visited
+		 */
+		private int select(int node) {
+			Tree t = this.tree;
+			double logVisits = Math.log(t.visits[node]);
+			int best = -1;
+			double bestValue = Double.NEGATIVE_INFINITY;
+			for (int child = t.firstChild[node]; child < t.firstChild[node] + t.childCount[node]; child++) {
+				int visits = t.visits[child];
+				if (visits == 0) {
+					return child;
+				}
+				double value = t.wins[child] / visits + EXPLORATION * Math.sqrt(logVisits / visits);
+				if (value > bestValue) {
+					bestValue = value;
+					best = child;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * Add the moves of the board as children of a node, unless the arena is full.
+		 */
+		private void expand(int node) {
+			Tree t = this.tree;
+			this.moveCache.getPossibleMoves(this.board, this.moveList);
+			if (this.moveList.isEmpty()) {
+				t.states[node] = Tree.TERMINAL;
+				return;
+			}
+			int first = t.add(this.moveList.size());
+			if (first == -1) {
+				return;
+			}
+			for (int k = 0; k < this.moveList.size(); k++) {
+				t.moves[first + k] = this.moveList.get(k);
+			}
+			t.firstChild[node] = first;
+			t.childCount[node] = this.moveList.size();
+			t.states[node] = Tree.EXPANDED;
+		}
+
+		/**
+		 * Make the move of a node on the board.
+		 * @param ply the ply of the move, the side to move is ply % 2
+		 */
+		private void play(int node, int ply) {
+			this.board.makeMove(this.tree.moves[node], this.undos[ply]);
+			this.sides.addGains(ply & 1, this.undos[ply].getGains(), 1);
+			this.tree.hashes[node] = this.board.getHash();
+		}
+
+		/**
+		 * Take back the move of a ply.
+		 */
+		private void undo(int ply) {
+			this.sides.addGains(ply & 1, this.undos[ply].getGains(), -1);
+			this.board.undoMove(this.undos[ply]);
+		}
+
+		/**
+		 * Play random moves until the game is over, and take them back.
+		 * A single move is found by trying the pushes in random order, a double move is
+		 * picked from all the double moves.
+		 * @param ply the ply to start at
+		 * @return the score of side 0 minus the score of side 1 at the end of the game
+		 */
+		private int playout(int ply) {
+			int start = ply;
+			while (ply < this.undos.length && this.randomMove(this.undos[ply])) {
+				this.sides.addGains(ply & 1, this.undos[ply].getGains(), 1);
+				ply++;
+			}
+			int difference = this.sides.difference(0);
+			while (ply > start) {
+				this.undo(--ply);
+			}
+			return difference;
+		}
+
+		/**
+		 * Make a random move on the board.
+		 * @param record the undo record of the move
+		 * @return false if there is no move
+		 */
+		private boolean randomMove(MoveUndo record) {
+			for (int left = this.order.length; left > 0; left--) {
+				int k = this.random.nextInt(left);
+				int push = this.order[k];
+				this.order[k] = this.order[left - 1];
+				this.order[left - 1] = push;
+				this.board.applyMove(push, record);
+				if (!record.getGains().isEmpty()) {
+					return true;
+				}
+				this.board.undoMove(record);
+			}
+
+			this.moveCache.getPossibleMoves(this.board, this.moveList);
+			if (this.moveList.isEmpty()) {
+				return false;
+			}
+			this.board.makeMove(this.moveList.get(this.random.nextInt(this.moveList.size())), record);
+			return true;
+		}
+
+		/**
+		 * Add the visits of the children of the root to the given visits per move.
+		 */
+		void addRootVisits(int[] visits) {
+			Tree t = this.tree;
+			if (t.states[0] == Tree.EXPANDED) {
+				for (int child = t.firstChild[0]; child < t.firstChild[0] + t.childCount[0]; child++) {
+					visits[t.moves[child]] += t.visits[child];
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,165 @@
+package collecto;
+
+import utils.Protocols;
+
+/**
+ * Moves packed into one int. A single move is its push, 0 to 27. A double move is
+ * stored after the single moves as DOUBLE + first * PUSHES + second, so every move
+ * fits in 0 to 811 and the two kinds never overlap.
+ * On a board of another size (see Geometry) the same numbering is used with
+ * geometry.getPushes() pushes; the methods without a geometry are for the 7x7 game.
+ * Moves are only turned into strings like "12" or "3~17" at the protocol boundary.
+ */
+public class Move {
+
+	public static final int NONE = -1; // Not a move, for example an input that cannot be parsed
+
+	public static final int PUSHES = Board.MAXMOVE + 1; // Number of different pushes
+	public static final int DOUBLE = PUSHES; // The first double move
+	public static final int COUNT = DOUBLE + PUSHES * PUSHES; // Number of different moves
+
+	private Move() {
+	}
+
+	/**
+	 * @requires Board.MINMOVE <= push && push <= Board.MAXMOVE
+	 * @return the single move of the push
+	 */
+	public static int of(int push) {
+		return push;
+	}
+
+	/**
+	 * @requires Board.MINMOVE <= first && first <= Board.MAXMOVE
+	 * @requires Board.MINMOVE <= second && second <= Board.MAXMOVE
+	 * @return the double move of the two pushes
+	 */
+	public static int of(int first, int second) {
+		return of(Geometry.DEFAULT, first, second);
+	}
+
+	/**
+	 * @requires 0 <= first && first < geometry.getPushes()
+	 * @requires 0 <= second && second < geometry.getPushes()
+	 * @return the double move of the two pushes on a board of the geometry
+	 */
+	public static int of(Geometry geometry, int first, int second) {
+		int pushes = geometry.getPushes();
+		return pushes + first * pushes + second;
+	}
+
+	/**
+	 * @return the number of different moves on a board of the geometry
+	 */
+	public static int count(Geometry geometry) {
+		int pushes = geometry.getPushes();
+		return pushes + pushes * pushes;
+	}
+
+	/**
+	 * @requires 0 <= move && move < COUNT
+	 * @return true if the move consists of two pushes
+	 */
+	public static boolean isDouble(int move) {
+		return move >= DOUBLE;
+	}
+
+	/**
+	 * @requires 0 <= move && move < count(geometry)
+	 * @return true if the move consists of two pushes
+	 */
+	public static boolean isDouble(Geometry geometry, int move) {
+		return move >= geometry.getPushes();
+	}
+
+	/**
+	 * @requires 0 <= move && move < COUNT
+	 * @return the push of a single move, or the first push of a double move
+	 */
+	public static int first(int move) {
+		return first(Geometry.DEFAULT, move);
+	}
+
+	/**
+	 * @requires 0 <= move && move < count(geometry)
+	 * @return the push of a single move, or the first push of a double move
+	 */
+	public static int first(Geometry geometry, int move) {
+		int pushes = geometry.getPushes();
+		return move < pushes ? move : (move - pushes) / pushes;
+	}
+
+	/**
+	 * @requires 0 <= move && move < COUNT
+	 * @return the push of a single move, or the second push of a double move
+	 */
+	public static int last(int move) {
+		return last(Geometry.DEFAULT, move);
+	}
+
+	/**
+	 * @requires 0 <= move && move < count(geometry)
+	 * @return the push of a single move, or the second push of a double move
+	 */
+	public static int last(Geometry geometry, int move) {
+		int pushes = geometry.getPushes();
+		return move < pushes ? move : (move - pushes) % pushes;
+	}
+
+	/**
+	 * Parse a move as it is sent in a MOVE message or typed by a player.
+	 * @param moveStr &lt;first push&gt;[~second push]
+	 * @return the move, or NONE if the string is not a move
+	 */
+	public static int parse(String moveStr) {
+		return parse(Geometry.DEFAULT, moveStr);
+	}
+
+	/**
+	 * Parse a move on a board of the geometry.
+	 * @param moveStr &lt;first push&gt;[~second push]
+	 * @return the move, or NONE if the string is not a move
+	 */
+	public static int parse(Geometry geometry, String moveStr) {
+		String[] moveArr = moveStr.split(Protocols.TILDE);
+		if (moveArr.length == 1) {
+			int push = parsePush(geometry, moveArr[0]);
+			return push == NONE ? NONE : of(push);
+		} else if (moveArr.length == 2) {
+			int first = parsePush(geometry, moveArr[0]);
+			int second = parsePush(geometry, moveArr[1]);
+			return first == NONE || second == NONE ? NONE : of(geometry, first, second);
+		}
+		return NONE;
+	}
+
+	/**
+	 * @requires 0 <= move && move < COUNT
+	 * @return the move as it is sent in a MOVE message: &lt;first push&gt;[~second push]
+	 */
+	public static String toProtocolString(int move) {
+		return toProtocolString(Geometry.DEFAULT, move);
+	}
+
+	/**
+	 * @requires 0 <= move && move < count(geometry)
+	 * @return the move as it is sent in a MOVE message: &lt;first push&gt;[~second push]
+	 */
+	public static String toProtocolString(Geometry geometry, int move) {
+		if (isDouble(geometry, move)) {
+			return first(geometry, move) + Protocols.TILDE + last(geometry, move);
+		}
+		return String.valueOf(move);
+	}
+
+	private static int parsePush(Geometry geometry, String pushStr) {
+		if (pushStr.matches("[0-9]{1,3}")) {
+			int push = Integer.parseInt(pushStr);
+			if (0 <= push && push < geometry.getPushes()) {
+				return push;
+			}
+		}
+		return NONE;
+	}
+
+}
@@ -0,0 +1,192 @@
+package collecto;
+
+import java.util.Arrays;
+
+/**
+ * The outcomes of all the moves of a position, kept from one turn to the next.
+ * The outcome of a push only depends on its own line and the two lines next to it,
+ * and a move only changes a few lines. Every outcome is stored with the keys of the
+ * lines it depends on (see BoardFeatures), so only the moves whose lines have changed
+ * since the last call are simulated again; the others are taken from the cache.
+ * Moves are simulated on the scratch bitboards of the board, so the board does not change.
+ * A double move depends on the line of its first push and the lines of its second push.
+ * Because the keys follow the balls and not the moves, the cache stays correct after
+ * undo, on another board of the same size and in a new game.
+ */
+public class MoveCache {
+
+	private static final byte UNKNOWN = 0;
+	private static final byte INVALID = 1;
+	private static final byte VALID = 2;
+
+	private final ColorCounts scratch = new ColorCounts(); // The gains of a simulated move
+	private Geometry geometry;
+
+	/* Per push: its line and the lines next to it, bit l for line l of BoardFeatures */
+	private long[] pushLines;
+	/* Per push: the bit of its own line */
+	private long[] ownLine;
+
+	/* Per packed move (see Move): the outcome, the keys of its lines and the balls it removes */
+	private byte[] state;
+	private long[] keys;
+	private ColorCounts[] gains;
+
+	/* The keys of the lines of the board, and per push of the lines of the push and of its own line,
+	   used while filling a list */
+	private long[] lineKeys;
+	private long[] pushKeys;
+	private long[] ownKeys;
+
+	private long computed;
+	private long reused;
+
+	/**
+	 * Get all the possible moves of a board, as Strategy#getPossibleMoves does,
+	 * simulating only the moves whose lines have changed.
+	 * @param board the board, it is left as it is
+	 * @param possibleMoves the list to fill, it is cleared first
+	 */
+	public void getPossibleMoves(Board board, MoveList possibleMoves) {
+		this.bind(board.getGeometry());
+		int pushes = this.geometry.getPushes();
+		possibleMoves.clear();
+
+		BoardFeatures features = board.getFeatures();
+		for (int line = 0; line < this.lineKeys.length; line++) {
+			this.lineKeys[line] = features.getLineKey(line);
+		}
+
+		for (int m = 0; m < pushes; m++) {
+			long key = this.key(this.pushLines[m]);
+			this.pushKeys[m] = key;
+			if (!this.isKnown(m, key)) {
+				this.store(m, key, board.simulateMove(m, this.scratch));
+			}
+			if (this.state[m] == VALID) {
+				possibleMoves.add(m, this.gains[m]);
+			}
+		}
+
+		// No single move: a first push is only simulated when one of its double moves has changed,
+		// and then only once for all the second pushes
+		if (possibleMoves.isEmpty()) {
+			for (int i = 0; i < pushes; i++) {
+				this.ownKeys[i] = this.key(this.ownLine[i]);
+			}
+			for (int i = 0; i < pushes; i++) {
+				boolean pushed = false;
+				boolean moved = false;
+				for (int j = 0; j < pushes; j++) {
+					int move = Move.of(this.geometry, i, j);
+					long key = (this.pushLines[j] & this.ownLine[i]) != 0
+							? this.pushKeys[j] : this.pushKeys[j] ^ this.ownKeys[i];
+					if (!this.isKnown(move, key)) {
+						if (!pushed) {
+							moved = board.simulateFirstPush(i);
+							pushed = true;
+						}
+						this.store(move, key, moved && board.simulateSecondPush(j, this.scratch));
+					}
+					if (this.state[move] == VALID) {
+						possibleMoves.add(move, this.gains[move]);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the number of moves that have been simulated to find their outcome
+	 */
+	public long getComputed() {
+		return this.computed;
+	}
+
+	/**
+	 * @return the number of outcomes that have been taken from the cache
+	 */
+	public long getReused() {
+		return this.reused;
+	}
+
+	/**
+	 * Forget all the outcomes.
+	 */
+	public void clear() {
+		if (this.state != null) {
+			Arrays.fill(this.state, UNKNOWN);
+		}
+	}
+
+	/**
+	 * @param key the keys of the lines of the move on the board
+	 * @return true if the outcome of the move is in the cache
+	 */
+	private boolean isKnown(int move, long key) {
+		if (this.state[move] != UNKNOWN && this.keys[move] == key) {
+			this.reused++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Store the outcome of a move, the gains of a valid move are in scratch.
+	 * @param key the keys of the lines of the move on the board
+	 */
+	private void store(int move, long key, boolean valid) {
+		this.computed++;
+		if (valid) {
+			if (this.gains[move] == null) {
+				this.gains[move] = new ColorCounts(this.geometry.getColors());
+			}
+			this.gains[move].set(this.scratch);
+		}
+		this.state[move] = valid ? VALID : INVALID;
+		this.keys[move] = key;
+	}
+
+	/**
+	 * @return the XOR of the keys of the given lines
+	 */
+	private long key(long lines) {
+		long key = 0;
+		for (; lines != 0; lines &= lines - 1) {
+			key ^= this.lineKeys[Long.numberOfTrailingZeros(lines)];
+		}
+		return key;
+	}
+
+	/**
+	 * Make room for the moves of a board size, forgetting the outcomes of another size.
+	 */
+	private void bind(Geometry geometry) {
+		if (geometry.equals(this.geometry)) {
+			return;
+		}
+
+		int dim = geometry.getDim();
+		int pushes = geometry.getPushes();
+		int count = Move.count(geometry);
+		this.geometry = geometry;
+		this.pushLines = new long[pushes];
+		this.ownLine = new long[pushes];
+		for (int move = 0; move < pushes; move++) {
+			// Rows are lines 0 to dim - 1 and are pushed left or right, columns are lines dim to 2 * dim - 1
+			int first = move / dim < 2 ? 0 : dim;
+			int line = move % dim;
+			this.ownLine[move] = 1L << (first + line);
+			for (int l = Math.max(0, line - 1); l <= Math.min(dim - 1, line + 1); l++) {
+				this.pushLines[move] |= 1L << (first + l);
+			}
+		}
+		this.state = new byte[count];
+		this.keys = new long[count];
+		this.gains = new ColorCounts[count];
+		this.lineKeys = new long[2 * dim];
+		this.pushKeys = new long[pushes];
+		this.ownKeys = new long[pushes];
+	}
+
+}
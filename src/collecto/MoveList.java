@@ -0,0 +1,90 @@
+package collecto;
+
+import java.util.Arrays;
+
+/**
+ * A list of packed moves (see {@link Move}), together with the balls each move removes.
+ * The arrays are allocated for the number of moves of the 7x7 game and only grow on
+ * bigger boards, so a list can be cleared and filled again without allocating.
+ */
+public class MoveList {
+
+	private int[] moves = new int[Move.COUNT];
+	private ColorCounts[] gains = new ColorCounts[Move.COUNT];
+	private int size;
+
+	/**
+	 * Add a move.
+	 * @param move a packed move
+	 * @param gains the balls the move removes, they are copied
+	 */
+	public void add(int move, ColorCounts gains) {
+		if (this.size == this.moves.length) {
+			this.moves = Arrays.copyOf(this.moves, 2 * this.size);
+			this.gains = Arrays.copyOf(this.gains, 2 * this.size);
+		}
+		if (this.gains[this.size] == null) {
+			this.gains[this.size] = new ColorCounts();
+		}
+		this.moves[this.size] = move;
+		this.gains[this.size].set(gains);
+		this.size++;
+	}
+
+	/**
+	 * @requires 0 <= index && index < size()
+	 * @return the move at the given index
+	 */
+	public int get(int index) {
+		return this.moves[index];
+	}
+
+	/**
+	 * @requires 0 <= index && index < size()
+	 * @return the balls the move at the given index removes
+	 */
+	public ColorCounts getGains(int index) {
+		return this.gains[index];
+	}
+
+	/**
+	 * @return the index of the move, or -1 if it is not in the list
+	 */
+	public int indexOf(int move) {
+		for (int i = 0; i < this.size; i++) {
+			if (this.moves[i] == move) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return true if the move is in the list
+	 */
+	public boolean contains(int move) {
+		return this.indexOf(move) != -1;
+	}
+
+	/**
+	 * @return the number of moves
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * @return true if there are no moves
+	 */
+	public boolean isEmpty() {
+		return this.size == 0;
+	}
+
+	/**
+	 * Remove all the moves, the list can be filled again.
+	 */
+	public void clear() {
+		this.size = 0;
+	}
+
+}
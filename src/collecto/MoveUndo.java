@@ -0,0 +1,71 @@
+package collecto;
+
+import java.util.Arrays;
+
+import utils.Colors;
+
+/**
+ * Undo record of a move made with {@link Board#applyMove(int, MoveUndo)}.
+ * It holds the row or column of every push as it was before the push, the balls
+ * that have been removed and the number of balls of each color the player gets.
+ * A record can be reused for the next move, so a search does not need to allocate.
+ * The bitboards are laid out as in Board; a record grows to the size of the board it is used on.
+ */
+public class MoveUndo {
+
+	/* The number of pushes recorded: 1 for a single move, 2 for a double move */
+	int pushes;
+
+	/* The pushes that have been made */
+	final int[] moves = new int[2];
+
+	/*
+	 * Per push, the bits of the pushed line before the push, indexed by (color ordinal * words + word)
+	 * with 0 the occupancy. Only the words of the line are written.
+	 */
+	long[][] lines = new long[2][Colors.values().length];
+
+	/* The removed balls, indexed by (color ordinal * words + word) */
+	long[] removed = new long[Colors.values().length];
+
+	/* The number of removed balls of each color */
+	final ColorCounts gains = new ColorCounts();
+
+	/**
+	 * Clear the record before it is filled with a new move.
+	 * @param length the number of longs of the bitboards of the board
+	 */
+	void clear(int length) {
+		this.pushes = 0;
+		if (this.removed.length != length) {
+			this.lines = new long[2][length];
+			this.removed = new long[length];
+		} else {
+			Arrays.fill(this.removed, 0L);
+		}
+		this.gains.clear();
+	}
+
+	/**
+	 * @return the number of balls of the given color the move has removed
+	 */
+	public int getGain(Colors color) {
+		return this.gains.get(color);
+	}
+
+	/**
+	 * @return the total number of balls the move has removed
+	 */
+	public int getTotal() {
+		return this.gains.getTotal();
+	}
+
+	/**
+	 * The returned counts belong to this record and change with the next move it records.
+	 * @return the removed balls of each color
+	 */
+	public ColorCounts getGains() {
+		return this.gains;
+	}
+
+}
@@ -1,11 +1,9 @@
 package collecto;
 
-import java.util.Map;
-
-import utils.Colors;
-
 public class NaiveStrategy implements Strategy {
 
+	private MoveCache moveCache = new MoveCache(); // Outcomes of the moves of earlier turns
+
 	@Override
 	public String getName() {
 		return "Naive";
@@ -16,20 +14,16 @@ public class NaiveStrategy implements Strategy {
 	 * Has a higher preference for getting the most balls
 	 * @param the board
 	 */
-	public String determineMove(Board board) {
-		Map<String, Map<Colors, Integer>> possibleMoves = this.getPossibleMoves(board);
-		String move = "-1";
+	public int determineMove(Board board) {
+		MoveList possibleMoves = this.getPossibleMoves(board);
+		int move = Move.NONE;
 		int maxBalls = 0;
 
-		for (String m : possibleMoves.keySet()) {
-			int num = 0;
-			
-			for (Colors color : possibleMoves.get(m).keySet()) {
-				num += possibleMoves.get(m).get(color);
-	    	}
+		for (int i = 0; i < possibleMoves.size(); i++) {
+			int num = possibleMoves.getGains(i).getTotal();
 
 			if (maxBalls == 0 || num > maxBalls) {
-				move = m;
+				move = possibleMoves.get(i);
 				maxBalls = num;
 			}
 		}
@@ -37,4 +31,9 @@ public class NaiveStrategy implements Strategy {
 		return move;
 	}
 
+	@Override
+	public void getPossibleMoves(Board board, MoveList possibleMoves) {
+		this.moveCache.getPossibleMoves(board, possibleMoves);
+	}
+
 }
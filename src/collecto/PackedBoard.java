@@ -0,0 +1,151 @@
+package collecto;
+
+import java.util.Arrays;
+
+import utils.Colors;
+
+/**
+ * A board packed into three longs: the color ordinal of every field (x * DIM + y)
+ * takes 3 bits, 21 fields per long, so the 49 fields take 147 bits.
+ * It is an immutable value with a cheap equals and hashCode, meant as a key for
+ * caches and stores, and as a binary form of the board of BYTES bytes.
+ */
+public final class PackedBoard {
+
+	public static final int BITS = 3; // Bits per field
+	public static final int PER_WORD = Long.SIZE / BITS; // Fields per long: 21
+	public static final int WORDS = 3;
+	public static final int BYTES = 2 * Long.BYTES + 3; // The last long only uses 7 fields, 21 bits
+
+	private static final int FIELDS = Board.DIM * Board.DIM;
+	private static final long FIELD_MASK = (1L << BITS) - 1;
+
+	private final long word0;
+	private final long word1;
+	private final long word2;
+
+	/**
+	 * Creates a packed board from its three words.
+	 * @param word0 fields 0 to 20
+	 * @param word1 fields 21 to 41
+	 * @param word2 fields 42 to 48
+	 */
+	public PackedBoard(long word0, long word1, long word2) {
+		this.word0 = word0;
+		this.word1 = word1;
+		this.word2 = word2;
+	}
+
+	/**
+	 * Pack bitboards as they are kept by Board.
+	 * @param bits bits[c] holds the balls of the color with ordinal c (bits[0] is not used)
+	 * @return the packed board
+	 */
+	static PackedBoard pack(long[] bits) {
+		long[] words = new long[WORDS];
+		for (int c = 1; c < bits.length; c++) {
+			for (long balls = bits[c]; balls != 0; balls &= balls - 1) {
+				int field = Long.numberOfTrailingZeros(balls);
+				words[field / PER_WORD] |= (long) c << (field % PER_WORD * BITS);
+			}
+		}
+		return new PackedBoard(words[0], words[1], words[2]);
+	}
+
+	/**
+	 * Unpack into bitboards as they are kept by Board.
+	 * @param bits gets the occupancy in bits[0] and the balls of color c in bits[c]
+	 */
+	void unpack(long[] bits) {
+		Arrays.fill(bits, 0L);
+		for (int field = 0; field < FIELDS; field++) {
+			int color = this.getCell(field);
+			if (color != 0) {
+				bits[color] |= 1L << field;
+				bits[0] |= 1L << field;
+			}
+		}
+	}
+
+	/**
+	 * @requires 0 <= field && field < DIM * DIM
+	 * @return the color ordinal of the field (x * DIM + y)
+	 */
+	public int getCell(int field) {
+		long word = field < PER_WORD ? this.word0 : (field < 2 * PER_WORD ? this.word1 : this.word2);
+		return (int) ((word >>> (field % PER_WORD * BITS)) & FIELD_MASK);
+	}
+
+	/**
+	 * @requires (0 <= x && x < DIM) && (0 <= y && y < DIM)
+	 * @return the color of the ball in row x and column y, or EMPTY
+	 */
+	public Colors getField(int x, int y) {
+		return Colors.values()[this.getCell(x * Board.DIM + y)];
+	}
+
+	/**
+	 * @requires 0 <= index && index < WORDS
+	 * @return the word with the given index
+	 */
+	public long getWord(int index) {
+		return index == 0 ? this.word0 : (index == 1 ? this.word1 : this.word2);
+	}
+
+	/**
+	 * @return a new board with the balls of this packed board
+	 */
+	public Board toBoard() {
+		return new Board(this);
+	}
+
+	/**
+	 * @return the packed board as BYTES bytes, little endian: word0, word1 and the used bytes of word2
+	 */
+	public byte[] toBytes() {
+		byte[] bytes = new byte[BYTES];
+		for (int i = 0; i < BYTES; i++) {
+			long word = this.getWord(i / Long.BYTES);
+			bytes[i] = (byte) (word >>> (i % Long.BYTES * Byte.SIZE));
+		}
+		return bytes;
+	}
+
+	/**
+	 * @requires bytes.length >= offset + BYTES
+	 * @param bytes the bytes written by toBytes
+	 * @param offset the index of the first byte
+	 * @return the packed board
+	 */
+	public static PackedBoard fromBytes(byte[] bytes, int offset) {
+		long[] words = new long[WORDS];
+		for (int i = 0; i < BYTES; i++) {
+			words[i / Long.BYTES] |= (bytes[offset + i] & 0xFFL) << (i % Long.BYTES * Byte.SIZE);
+		}
+		return new PackedBoard(words[0], words[1], words[2]);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (!(obj instanceof PackedBoard)) {
+			return false;
+		}
+		PackedBoard other = (PackedBoard) obj;
+		return this.word0 == other.word0 && this.word1 == other.word1 && this.word2 == other.word2;
+	}
+
+	@Override
+	public int hashCode() {
+		// Mix the words, so boards that differ in a few fields spread over the buckets
+		long h = this.word0 * 0x9E3779B97F4A7C15L;
+		h = (h ^ this.word1) * 0x9E3779B97F4A7C15L;
+		h = (h ^ this.word2) * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return String.format("PackedBoard[%016x %016x %06x]", this.word0, this.word1, this.word2);
+	}
+
+}
@@ -1,17 +1,11 @@
 package collecto;
 
-import java.util.HashMap;
-
-import utils.Colors;
-import utils.Protocols;
-
 public abstract class Player {
 
     private String name;
-    private HashMap<Colors, Integer> colorMap;
+    private final ColorCounts colorCounts = new ColorCounts();
     
     public Player() {
-    	this.colorMap = new HashMap<>();
     }
 
     /**
@@ -21,7 +15,6 @@ public abstract class Player {
      */
     public Player(String name) {
         this.name = name;
-        this.colorMap = new HashMap<>();
     }
 
     /**
@@ -42,63 +35,48 @@ public abstract class Player {
      * Returns the score of the player.
      */
     public int getScore() {
-    	int score = 0;
-
-    	for (Integer val : this.colorMap.values()) {
-    		score += val / 3;
-    	}
-
-    	return score;
+    	return this.colorCounts.getScore();
     }
     
     /**
      * Determines the field for the next move
      * @requires board has valid move
      * @param board the current game board
-     * @return the player's choice
+     * @return the player's choice, a packed move (see Move)
      */
-    public abstract String determineMove(Board board);
+    public abstract int determineMove(Board board);
 
     /**
      * Makes a move on the board
      * @requires board has at least a valid move
      * @param board the current board
+     * @param move a packed move (see Move)
      */
-    public void makeMove(Board board, String move) {
-    	String[] moveArr = move.split(Protocols.TILDE);
-
-		if (moveArr.length == 1) {
-			this.setColorMap(board.setMove(Integer.parseInt(moveArr[0])));
-		} else if (moveArr.length == 2) {
-			board.moveBalls(Integer.parseInt(moveArr[0]));
-			this.setColorMap(board.setMove(Integer.parseInt(moveArr[1])));
-		}
-    };
+    public void makeMove(Board board, int move) {
+    	this.addColorCounts(board.makeMove(move));
+    }
     
     /**
      * Add the color after each valid move
-     * @param map
+     * @param gains the balls the move has removed
      */
-    public void setColorMap(HashMap<Colors, Integer> map) {
-    	for (Colors color : map.keySet()) {
-    		int current = this.colorMap.getOrDefault(color, 0);
-    		this.colorMap.put(color, current + map.get(color));
-    	}
+    public void addColorCounts(ColorCounts gains) {
+    	this.colorCounts.add(gains);
     }
     
     /**
      * Return the balls that the player gets.
-     * @return a map containing balls(color) and amount
+     * @return the balls(color) and amount
      */
-    public HashMap<Colors, Integer> getColorMap() {
-    	return this.colorMap;
+    public ColorCounts getColorCounts() {
+    	return this.colorCounts;
     }
     
     /**
      * reset the result.
      */
     public void reset() {
-    	this.colorMap = new HashMap<>();
+    	this.colorCounts.clear();
     }
     
 }
@@ -0,0 +1,104 @@
+package collecto;
+
+/**
+ * The BatchKernel in plain Java, one board at a time. It is used when the Vector API
+ * is not available, and for the boards at the end of a batch that do not fill a vector.
+ */
+class ScalarBatchKernel implements BatchKernel {
+
+	@Override
+	public void push(Geometry geometry, int move, long[][] planes, long[] moved, int size) {
+		push(geometry, move, planes, moved, 0, size);
+	}
+
+	@Override
+	public void match(Geometry geometry, int move, long[][] planes, long[] moved, long[][] removed,
+			int size, boolean remove) {
+		match(geometry, move, planes, moved, removed, 0, size, remove);
+	}
+
+	/**
+	 * Push the line of a move on boards from to to - 1, see BatchKernel.push.
+	 */
+	static void push(Geometry geometry, int move, long[][] planes, long[] moved, int from, int to) {
+		long lineMask = geometry.lineMask[move];
+		int stride = geometry.stride[move];
+		int rounds = geometry.getDim() - 1;
+
+		for (int i = from; i < to; i++) {
+			long movedBalls = 0;
+			for (int r = 0; r < rounds; r++) {
+				// The balls whose next field towards the start of the line is EMPTY
+				long empty = ~planes[0][i] & lineMask;
+				long movers = planes[0][i] & away(empty, stride) & lineMask;
+				if (movers == 0) {
+					break;
+				}
+				for (int c = 0; c < planes.length; c++) {
+					long plane = planes[c][i];
+					planes[c][i] = (plane & ~movers) | toward(plane & movers, stride);
+				}
+				movedBalls = (movedBalls & ~movers) | toward(movers, stride);
+			}
+			moved[i] = movedBalls;
+		}
+	}
+
+	/**
+	 * Find the balls that match on boards from to to - 1, see BatchKernel.match.
+	 */
+	static void match(Geometry geometry, int move, long[][] planes, long[] moved, long[][] removed,
+			int from, int to, boolean remove) {
+		long lineMask = geometry.lineMask[move];
+		int stride = geometry.stride[move];
+		int across = geometry.across[move];
+		boolean hasBefore = (geometry.acrossLines[move] & 1) != 0;
+		boolean hasAfter = (geometry.acrossLines[move] & 2) != 0;
+		boolean trailing = geometry.trailingAcross[move];
+
+		for (int c = 1; c < planes.length; c++) {
+			long[] plane = planes[c];
+			for (int i = from; i < to; i++) {
+				long balls = plane[i];
+				long line = balls & lineMask;
+				long mine = line & moved[i];
+
+				// The balls of the lines before and after, moved onto the fields of the line next to them
+				long before = hasBefore ? away(balls, across) & lineMask : 0;
+				long after = hasAfter ? toward(balls, across) & lineMask : 0;
+				long inLine = (mine & (nextTo(line, stride, lineMask) | before | after))
+						| (nextTo(mine, stride, lineMask) & line);
+				long chain = trailing ? mine : mine & ~away(mine, stride);
+				long matched = inLine | toward(chain & before, across) | away(chain & after, across);
+
+				removed[c][i] = matched;
+				if (remove) {
+					plane[i] = balls & ~matched;
+					planes[0][i] &= ~matched;
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the fields of the line next to the given fields
+	 */
+	private static long nextTo(long fields, int stride, long lineMask) {
+		return (toward(fields, stride) | away(fields, stride)) & lineMask;
+	}
+
+	/**
+	 * Move every bit one step of the given stride towards the start of a line: field f to f - stride.
+	 */
+	static long toward(long x, int stride) {
+		return stride > 0 ? x >>> stride : x << -stride;
+	}
+
+	/**
+	 * Move every bit one step of the given stride away from the start of a line: field f to f + stride.
+	 */
+	static long away(long x, int stride) {
+		return stride > 0 ? x << stride : x >>> -stride;
+	}
+
+}
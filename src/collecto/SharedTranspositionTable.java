@@ -0,0 +1,115 @@
+package collecto;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A transposition table that can be used by several threads at the same time without locks.
+ * An entry is one long that packs the value, move, depth, flag and generation of a result.
+ * A slot holds the entry and the key XOR the entry, each written with one atomic write.
+ * When two threads write a slot at the same time the two longs may come from different
+ * writes, but then the key read back does not match and the slot counts as empty, so a
+ * torn entry is never returned.
+ * The replacement policy is the one of TranspositionTable.
+ */
+public class SharedTranspositionTable {
+
+	/* The flags of TranspositionTable */
+	public static final int EXACT = TranspositionTable.EXACT;
+	public static final int LOWER = TranspositionTable.LOWER;
+	public static final int UPPER = TranspositionTable.UPPER;
+
+	/* The bits of an entry: value 0-31, move + 1 32-47, depth 48-55, flag 56-57, generation 58-63 */
+	private static final int MOVE_SHIFT = 32;
+	private static final int DEPTH_SHIFT = 48;
+	private static final int FLAG_SHIFT = 56;
+	private static final int GENERATION_SHIFT = 58;
+	private static final int GENERATIONS = 1 << (Long.SIZE - GENERATION_SHIFT);
+
+	private final AtomicLongArray slots; // Per slot: the key XOR the entry at 2 * index, the entry at 2 * index + 1
+	private final int mask;
+
+	private int generation;
+
+	/**
+	 * Creates a new SharedTranspositionTable.
+	 * @requires 0 < sizeLog2 && sizeLog2 < 30
+	 * @param sizeLog2 the table holds 2^sizeLog2 entries
+	 */
+	public SharedTranspositionTable(int sizeLog2) {
+		int size = 1 << sizeLog2;
+		this.slots = new AtomicLongArray(2 * size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Remove all the entries. Not to be called while other threads use the table.
+	 */
+	public void clear() {
+		for (int i = 0; i < this.slots.length(); i++) {
+			this.slots.setPlain(i, 0);
+		}
+		this.generation = 0;
+	}
+
+	/**
+	 * Start a new search. Entries of earlier searches are kept, but may be replaced
+	 * by any entry of the new search. Not to be called while other threads use the table.
+	 */
+	public void newSearch() {
+		this.generation = (this.generation + 1) % GENERATIONS;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param key the hash of the position
+	 * @return the entry of the position, or 0 if the position is not in the table
+	 */
+	public long probe(long key) {
+		int index = (int) key & this.mask;
+		long entry = this.slots.getOpaque(2 * index + 1);
+		return entry != 0 && (this.slots.getOpaque(2 * index) ^ entry) == key ? entry : 0;
+	}
+
+	public static int getValue(long entry) {
+		return (int) entry;
+	}
+
+	public static int getMove(long entry) {
+		return (int) (entry >>> MOVE_SHIFT & 0xFFFF) - 1;
+	}
+
+	public static int getDepth(long entry) {
+		return (int) (entry >>> DEPTH_SHIFT & 0xFF);
+	}
+
+	public static int getFlag(long entry) {
+		return (int) (entry >>> FLAG_SHIFT & 0x3);
+	}
+
+	/**
+	 * Store the result of a search, unless the slot holds a deeper result of the current search.
+	 * @requires depth >= 1 && move < 0xFFFF
+	 * @param key the hash of the position
+	 * @param depth the depth the position has been searched to
+	 * @param value the value of the position
+	 * @param flag EXACT, LOWER or UPPER
+	 * @param move the best move found, or -1
+	 */
+	public void store(long key, int depth, int value, int flag, int move) {
+		int index = (int) key & this.mask;
+		long old = this.slots.getOpaque(2 * index + 1);
+		if (old != 0 && (this.slots.getOpaque(2 * index) ^ old) != key
+				&& (int) (old >>> GENERATION_SHIFT) == this.generation && getDepth(old) > depth) {
+			return;
+		}
+
+		long entry = value & 0xFFFFFFFFL
+				| (long) (move + 1) << MOVE_SHIFT
+				| (long) Math.min(depth, 0xFF) << DEPTH_SHIFT
+				| (long) flag << FLAG_SHIFT
+				| (long) this.generation << GENERATION_SHIFT;
+		this.slots.setOpaque(2 * index + 1, entry);
+		this.slots.setOpaque(2 * index, key ^ entry);
+	}
+
+}
@@ -0,0 +1,68 @@
+package collecto;
+
+/**
+ * The balls both players have during a search, with their scores and the Zobrist keys of
+ * their balls. Side 0 is the player to move at the root of the search and side 1 the other
+ * player, who has the balls that are neither on the board nor collected by side 0.
+ * A search adds the balls of a move to the side that makes it and takes them back after.
+ */
+final class SideCounts {
+
+	/* Per side: the balls indexed by color ordinal, the score and the XOR of Zobrist#countKey over the colors */
+	final int[][] counts = new int[2][];
+	final int[] scores = new int[2];
+	final long[] keys = new long[2];
+
+	private Zobrist zobrist;
+
+	/**
+	 * Set up the balls of both sides.
+	 * @param board the board at the root of the search
+	 * @param mine the balls of the player to move
+	 */
+	void start(Board board, ColorCounts mine) {
+		Geometry geometry = board.getGeometry();
+		this.zobrist = geometry.getZobrist();
+		if (this.counts[0] == null || this.counts[0].length != geometry.getColors() + 1) {
+			this.counts[0] = new int[geometry.getColors() + 1];
+			this.counts[1] = new int[geometry.getColors() + 1];
+		}
+		this.scores[0] = 0;
+		this.scores[1] = 0;
+		this.keys[0] = 0;
+		this.keys[1] = 0;
+		for (int c = 1; c <= geometry.getColors(); c++) {
+			this.counts[0][c] = mine.get(c);
+			this.counts[1][c] = Math.max(0, geometry.getEach() - mine.get(c) - board.getBallCount(c));
+			for (int side = 0; side < 2; side++) {
+				this.scores[side] += this.counts[side][c] / 3;
+				this.keys[side] ^= this.zobrist.countKey(c, this.counts[side][c]);
+			}
+		}
+	}
+
+	/**
+	 * Add or take back the balls a move gives to a side, with its score and key.
+	 * @param sign 1 to add the balls, -1 to take them back
+	 */
+	void addGains(int side, ColorCounts gains, int sign) {
+		int[] count = this.counts[side];
+		for (int c = 1; c < count.length; c++) {
+			int gain = gains.get(c);
+			if (gain != 0) {
+				int next = count[c] + sign * gain;
+				this.scores[side] += next / 3 - count[c] / 3;
+				this.keys[side] ^= this.zobrist.countKey(c, count[c]) ^ this.zobrist.countKey(c, next);
+				count[c] = next;
+			}
+		}
+	}
+
+	/**
+	 * @return the score of the side minus the score of the other side
+	 */
+	int difference(int side) {
+		return this.scores[side] - this.scores[1 - side];
+	}
+
+}
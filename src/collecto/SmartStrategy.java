@@ -1,18 +1,110 @@
 package collecto;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import utils.Colors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/**
+ * Picks the move with the best score, taking the best reply of the opponent into account.
+ * The reply to every candidate move is independent of the other candidates, so with a
+ * parallelism above 1 the replies are predicted on a ForkJoinPool, one worker per thread
+ * with its own copy of the board. The transposition table is only used on the calling
+ * thread, and the move is picked after all replies are known, so the result is the same
+ * as with a parallelism of 1.
+ * Once few enough balls are left, the position is looked up in a Tablebase if there is
+ * one, or solved exactly by an EndgameSolver.
+ */
 public class SmartStrategy implements Strategy {
 	
 	private Player player;
+	private TranspositionTable table = new TranspositionTable(16);
+	private MoveList oppPossibleMoves = new MoveList(); // Reused for every reply that is predicted
+	private MoveUndo undo = new MoveUndo();
+	private MoveCache moveCache = new MoveCache(); // Outcomes of the moves of earlier turns and predicted replies
+	private EndgameSolver endgameSolver = new EndgameSolver(); // Null when endings are not solved
+	private Tablebase tablebase; // Null when there is none
+
+	private ForkJoinPool pool; // Null when the replies are predicted on the calling thread
+	private ReplyWorker[] workers;
 	
 	public SmartStrategy(Player player) {
 		this.player = player;
 	}
+
+	/**
+	 * Creates a strategy that predicts the replies to the candidate moves on several threads.
+	 * @param player the player the strategy plays for
+	 * @param parallelism the number of threads, 1 to predict on the calling thread
+	 */
+	public SmartStrategy(Player player, int parallelism) {
+		this(player);
+		this.setParallelism(parallelism);
+	}
+
+	/**
+	 * Set the number of threads that predict the replies to the candidate moves.
+	 * @requires parallelism >= 1
+	 * @param parallelism the number of threads, 1 to predict on the calling thread
+	 */
+	public void setParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("The parallelism must be at least 1");
+		}
+		if (this.pool != null) {
+			this.pool.shutdown();
+			this.pool = null;
+			this.workers = null;
+		}
+		if (parallelism > 1) {
+			this.pool = new ForkJoinPool(parallelism);
+			this.workers = new ReplyWorker[parallelism];
+			for (int i = 0; i < parallelism; i++) {
+				this.workers[i] = new ReplyWorker(i, parallelism);
+			}
+		}
+	}
+
+	/**
+	 * Stop the threads that predict the replies, the strategy predicts them on the calling thread then.
+	 */
+	@Override
+	public void close() {
+		this.setParallelism(1);
+	}
+
+	/**
+	 * @return the number of threads that predict the replies to the candidate moves
+	 */
+	public int getParallelism() {
+		return this.workers == null ? 1 : this.workers.length;
+	}
 	
+	/**
+	 * Set the number of balls on the board at or below which the position is solved exactly.
+	 * @param threshold the number of balls, 0 to never solve
+	 */
+	public void setEndgameThreshold(int threshold) {
+		if (threshold <= 0) {
+			this.endgameSolver = null;
+		} else if (threshold != this.getEndgameThreshold()) {
+			this.endgameSolver = new EndgameSolver(threshold);
+		}
+	}
+
+	/**
+	 * @return the number of balls on the board at or below which the position is solved exactly
+	 */
+	public int getEndgameThreshold() {
+		return this.endgameSolver == null ? 0 : this.endgameSolver.getThreshold();
+	}
+
+	/**
+	 * Set the table of solved endings to look positions up in before they are searched.
+	 * @param tablebase the table, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
 	@Override
 	public String getName() {
 		return "Smart";
@@ -22,57 +114,58 @@ public class SmartStrategy implements Strategy {
 	 * determine a best move comparing with the predictive result of the opponent.
 	 * @param the board
 	 */
-	public String determineMove(Board board) {
-		
-		Map<String, Map<Colors, Integer>> possibleMoves = this.getPossibleMoves(board);
+	public int determineMove(Board board) {
+		if (this.tablebase != null) {
+			int index = this.tablebase.probe(board, this.player.getColorCounts());
+			if (index != -1) {
+				return this.tablebase.getMove(index);
+			}
+		}
+		if (this.endgameSolver != null && this.endgameSolver.canSolve(board)) {
+			this.endgameSolver.solve(board, this.player.getColorCounts());
+			return this.endgameSolver.getBestMove();
+		}
+
+		MoveList possibleMoves = this.getPossibleMoves(board);
+		this.table.newSearch();
+		int[] scoreInfos = this.pool == null
+				? this.getOppScoreInfos(board, possibleMoves)
+				: this.getOppScoreInfosParallel(board, possibleMoves);
 		
-		String move = "-1";
+		int move = Move.NONE;
 		int totalBall = 0;
 		int curScore = player.getScore();
 		int moreThan6 = 0;
 		int oppIncScore = 0;
 		
-		HashMap<Colors, Integer> curColorMap;
-
-		for (String m : possibleMoves.keySet()) {
-			int total = 0;
-			int mt6 = 0;
-
-			curColorMap = new HashMap<>(player.getColorMap());
-			for (Colors color : possibleMoves.get(m).keySet()) {
-				int amount = possibleMoves.get(m).get(color);
-				total += amount;
-	    		int current = curColorMap.getOrDefault(color, 0);
-	    		if (current == 6 && current + amount == 8) {
-	    			mt6++;
-	    		}
-	    		curColorMap.put(color, current + amount);
-	    	}
-
-			int score = 0;
-			for (Integer val : curColorMap.values()) {
-	    		score += val / 3;
-	    	}
+		ColorCounts colorCounts = player.getColorCounts();
+
+		for (int i = 0; i < possibleMoves.size(); i++) {
+			int m = possibleMoves.get(i);
+			ColorCounts gains = possibleMoves.getGains(i);
+			int total = gains.getTotal();
+			int mt6 = colorCounts.countSixToEight(gains);
+			int score = colorCounts.getScoreWith(gains);
 			
-			Map<String, Integer> oppScoreInfo = this.getOppScoreInfo(board, m);
+			int oppInc = getIncScores(scoreInfos[i]);
 			
 			if (totalBall == 0 
-					|| total > totalBall && score > curScore && oppScoreInfo.get("incScores") == 0
-					|| total > totalBall && score == curScore && oppScoreInfo.get("incScores") == 0
-					|| total > totalBall && score - curScore > oppScoreInfo.get("incScores")
+					|| total > totalBall && score > curScore && oppInc == 0
+					|| total > totalBall && score == curScore && oppInc == 0
+					|| total > totalBall && score - curScore > oppInc
 					|| total > totalBall && score > curScore 
 					|| total == totalBall && score == curScore 
-								&& oppIncScore > oppScoreInfo.get("incScores")
+								&& oppIncScore > oppInc
 					|| total == totalBall && score == curScore
-							 && oppIncScore == oppScoreInfo.get("incScores") && mt6 < moreThan6 
+							 && oppIncScore == oppInc && mt6 < moreThan6 
 					|| total == totalBall && score == curScore 
-							 && oppIncScore == oppScoreInfo.get("incScores") && mt6 == moreThan6
+							 && oppIncScore == oppInc && mt6 == moreThan6
 					|| total > totalBall) {
 				move = m;
 				curScore = score;
 				totalBall = total;
 				moreThan6 = mt6;
-			    oppIncScore = oppScoreInfo.get("incScores");
+			    oppIncScore = oppInc;
 			}
 		}
 
@@ -80,127 +173,211 @@ public class SmartStrategy implements Strategy {
 		
 	}
 	
+	@Override
+	public void getPossibleMoves(Board board, MoveList possibleMoves) {
+		this.moveCache.getPossibleMoves(board, possibleMoves);
+	}
+
+	/**
+	 * Predict the best reply of the opponent to every candidate move, one after another.
+	 * @return the packed score info (see packScoreInfo) of every move of the list
+	 */
+	private int[] getOppScoreInfos(Board board, MoveList possibleMoves) {
+		int[] scoreInfos = new int[possibleMoves.size()];
+		for (int i = 0; i < scoreInfos.length; i++) {
+			scoreInfos[i] = this.getOppScoreInfo(board, possibleMoves.get(i));
+		}
+		return scoreInfos;
+	}
+
+	/**
+	 * Predict the best reply of the opponent to every candidate move on the pool.
+	 * The transposition table is probed and filled on the calling thread, in the order of
+	 * the list, the workers only predict the replies that are not in it.
+	 * @return the packed score info (see packScoreInfo) of every move of the list
+	 */
+	private int[] getOppScoreInfosParallel(Board board, MoveList possibleMoves) {
+		ColorCounts oppColorCounts = this.getOppColorCounts(board);
+		long countsKey = board.getGeometry().getZobrist().hash(oppColorCounts);
+		int size = possibleMoves.size();
+		int[] scoreInfos = new int[size];
+		long[] keys = new long[size];
+		int[] pending = new int[size];
+		int pendingCount = 0;
+
+		for (int i = 0; i < size; i++) {
+			board.makeMove(possibleMoves.get(i), this.undo);
+			keys[i] = board.getHash() ^ countsKey;
+			board.undoMove(this.undo);
+			int index = this.table.probe(keys[i]);
+			if (index != -1) {
+				scoreInfos[i] = this.table.getValue(index);
+			} else {
+				pending[pendingCount++] = i;
+			}
+		}
+
+		if (pendingCount > 0) {
+			ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[this.workers.length];
+			for (int w = 0; w < tasks.length; w++) {
+				this.workers[w].start(board, possibleMoves, oppColorCounts, pending, pendingCount, scoreInfos);
+				tasks[w] = this.pool.submit(this.workers[w]);
+			}
+			for (ForkJoinTask<?> task : tasks) {
+				task.join();
+			}
+		}
+
+		for (int p = 0; p < pendingCount; p++) {
+			int i = pending[p];
+			if (this.table.probe(keys[i]) == -1) {
+				this.table.store(keys[i], 1, scoreInfos[i], TranspositionTable.EXACT, -1);
+			}
+		}
+		return scoreInfos;
+	}
+
 	/**
+	 * Predict the best reply of the opponent after the move. Results are kept in a
+	 * transposition table, so a position that is reached again is not searched again.
 	 * @param board
-	 * @param move
+	 * @param move a packed move (see Move)
+	 * @return the increase of score, the balls and the colors going from 6 to 8 balls
+	 * 		of the best reply, packed as in packScoreInfo
 	 */
-	public Map<String, Integer> getOppScoreInfo(Board board, String move) {
-		//Board boardCopy = board.deepCopy();
-		Map<String, Map<Colors, Integer>> oppPossibleMoves = this.predictMovesForOpp(board, move);
-		Map<String, Integer> scoreInfo = new HashMap<>();
+	public int getOppScoreInfo(Board board, int move) {
+		ColorCounts oppColorCounts = this.getOppColorCounts(board);
+		board.makeMove(move, this.undo);
+		long key = board.getHash() ^ board.getGeometry().getZobrist().hash(oppColorCounts);
+		int scoreInfo;
 
-		if (oppPossibleMoves.isEmpty()) {
-			scoreInfo.put("incScores", 0);
-			scoreInfo.put("totalBall", 0);
-			scoreInfo.put("moreThan6", 0);
+		int index = this.table.probe(key);
+		if (index != -1) {
+			scoreInfo = this.table.getValue(index);
 		} else {
-			Map<Colors, Integer> oppColorMap = this.getOppColorMap(board);
-			int totalBall = 0;
-			int curScore = this.calScore(oppColorMap);
-			int moreThan6 = 0;
-			int increasedScores = 0;
-			Map<Colors, Integer> curColorMap;
-			for (String key : oppPossibleMoves.keySet()) {
-				int total = 0;
-				int mt6 = 0;
-				curColorMap = new HashMap<>(oppColorMap);
-				for (Colors color : oppPossibleMoves.get(key).keySet()) {
-					int amount = oppPossibleMoves.get(key).get(color);
-					total += amount;
-		    		int current = curColorMap.getOrDefault(color, 0);
-		    		if (current == 6 && current + amount == 8) {
-		    			mt6++;
-		    		}
-		    		curColorMap.put(color, current + amount);
-		    	}
-				int score = 0;
-				for (Integer val : curColorMap.values()) {
-		    		score += val / 3;
-		    	}
-				
-				if (increasedScores == 0 || increasedScores < score - curScore 
-						|| (increasedScores == score - curScore && mt6 < moreThan6)
-						|| (increasedScores == score - curScore && 
-						 				mt6 == moreThan6 && total < totalBall)) {
-					increasedScores = score - curScore;
-					scoreInfo.put("incScores", increasedScores);
-					totalBall = total;
-					scoreInfo.put("totalBall", totalBall);
-					moreThan6 = mt6;
-					scoreInfo.put("moreThan6", moreThan6);
-				}
-			}
+			this.getPossibleMoves(board, this.oppPossibleMoves);
+			scoreInfo = calOppScoreInfo(this.oppPossibleMoves, oppColorCounts);
+			this.table.store(key, 1, scoreInfo, TranspositionTable.EXACT, -1);
 		}
 
+		board.undoMove(this.undo);
 		return scoreInfo;
 	}
-	
+
 	/**
-	 * Assume after AI moves, predict how many moves the opponent can get.
-	 * @param board
-	 * @param move
-	 * @return a hash map containing all possible moves and the possible result
-	 */
-	private Map<String, Map<Colors, Integer>> predictMovesForOpp(Board board, String move) {
-		Board boardCopy = board.deepCopy();
-		String[] moveArr = move.split("~");
-        if (moveArr.length == 1) {
-        	boardCopy.setMove(Integer.parseInt(moveArr[0]));
-        } else if (moveArr.length == 2) {
-        	boardCopy.moveBalls(Integer.parseInt(moveArr[0]));
-        	boardCopy.setMove(Integer.parseInt(moveArr[1]));
-        }
-		Map<String, Map<Colors, Integer>> predictiveMoves = this.getPossibleMoves(boardCopy);
-		return predictiveMoves;
+	 * @param oppPossibleMoves all possible moves of the opponent and the possible result
+	 * @param oppColorCounts the balls (color) and amount the opponent has
+	 * @return the best increase of score of the opponent, packed as in packScoreInfo
+	 */
+	private static int calOppScoreInfo(MoveList oppPossibleMoves, ColorCounts oppColorCounts) {
+		int totalBall = 0;
+		int curScore = oppColorCounts.getScore();
+		int moreThan6 = 0;
+		int increasedScores = 0;
+
+		for (int i = 0; i < oppPossibleMoves.size(); i++) {
+			ColorCounts gains = oppPossibleMoves.getGains(i);
+			int total = gains.getTotal();
+			int mt6 = oppColorCounts.countSixToEight(gains);
+			int score = oppColorCounts.getScoreWith(gains);
+			
+			if (increasedScores == 0 || increasedScores < score - curScore 
+					|| (increasedScores == score - curScore && mt6 < moreThan6)
+					|| (increasedScores == score - curScore && 
+					 				mt6 == moreThan6 && total < totalBall)) {
+				increasedScores = score - curScore;
+				totalBall = total;
+				moreThan6 = mt6;
+			}
+		}
+
+		return packScoreInfo(increasedScores, totalBall, moreThan6);
+	}
+
+	/**
+	 * Pack the result of a reply into one int, so it can be kept in the transposition table.
+	 * @return incScores | totalBall << 8 | moreThan6 << 16
+	 */
+	private static int packScoreInfo(int incScores, int totalBall, int moreThan6) {
+		return incScores | totalBall << 8 | moreThan6 << 16;
+	}
+
+	/**
+	 * @param scoreInfo a result packed by packScoreInfo
+	 * @return the increase of score of the result
+	 */
+	private static int getIncScores(int scoreInfo) {
+		return scoreInfo & 0xFF;
 	}
 	
 	/**
 	 * Get how many balls of each color the opponent gets.
 	 * @param board
-	 * @return a map 
+	 * @return the balls (color) and amount of the opponent
 	 */
-	private Map<Colors, Integer> getOppColorMap(Board board) {
+	private ColorCounts getOppColorCounts(Board board) {
 		
-		Map<Colors, Integer> oppColorMap = new HashMap<>();
-		Map<Colors, Integer> curColorMap = new HashMap<Colors, Integer>(player.getColorMap());
-		Colors[][] fields = board.getFields();
-
-		for (int i = 0; i < Board.DIM; i++) {
-			for (int j = 0; j < Board.DIM; j++) {
-				Colors color = fields[i][j];
-				if (color != Colors.EMPTY) {
-					int current = curColorMap.getOrDefault(fields[i][j], 0);
-		    		curColorMap.put(color, current + 1);
-				}
-			}
-		}
+		Geometry geometry = board.getGeometry();
+		ColorCounts oppColorCounts = new ColorCounts(geometry.getColors());
+		ColorCounts colorCounts = player.getColorCounts();
 
-		for (Colors color : Colors.values()) {
-			if (color != Colors.EMPTY) {
-				int current = curColorMap.getOrDefault(color, 0);
-				if (Board.EACH - current > 0) {
-					oppColorMap.put(color, Board.EACH - current);
-				}
+		for (int color = 1; color <= geometry.getColors(); color++) {
+			int current = colorCounts.get(color) + board.getBallCount(color);
+			if (geometry.getEach() - current > 0) {
+				oppColorCounts.set(color, geometry.getEach() - current);
 			}
 		}
 
-		return oppColorMap;
+		return oppColorCounts;
 		
 	}
-	
+
 	/**
-	 * Calculate the score, get 1 point for every 3 balls of each color.
-	 * @param colorMap
-	 * @return the score
+	 * Predicts the replies to every parallelism-th pending candidate move, on its own copy
+	 * of the board and with its own move cache, which it keeps from one turn to the next.
 	 */
-	private int calScore(Map<Colors, Integer> colorMap) {
-		int score = 0;
+	private static final class ReplyWorker implements Runnable {
+		private final int first;
+		private final int step;
+		private final MoveCache moveCache = new MoveCache();
+		private final MoveList replies = new MoveList();
+		private final MoveUndo undo = new MoveUndo();
 
-    	for (Integer val : colorMap.values()) {
-    		score += val / 3;
-    	}
+		private Board board;
+		private MoveList possibleMoves;
+		private ColorCounts oppColorCounts;
+		private int[] pending;
+		private int pendingCount;
+		private int[] scoreInfos;
 
-    	return score;
+		ReplyWorker(int first, int step) {
+			this.first = first;
+			this.step = step;
+		}
+
+		/**
+		 * Hand the candidate moves of a turn to the worker, it writes its results into scoreInfos.
+		 */
+		void start(Board board, MoveList possibleMoves, ColorCounts oppColorCounts,
+				int[] pending, int pendingCount, int[] scoreInfos) {
+			this.board = board.deepCopy();
+			this.possibleMoves = possibleMoves;
+			this.oppColorCounts = oppColorCounts;
+			this.pending = pending;
+			this.pendingCount = pendingCount;
+			this.scoreInfos = scoreInfos;
+		}
+
+		@Override
+		public void run() {
+			for (int p = this.first; p < this.pendingCount; p += this.step) {
+				int i = this.pending[p];
+				this.board.makeMove(this.possibleMoves.get(i), this.undo);
+				this.moveCache.getPossibleMoves(this.board, this.replies);
+				this.scoreInfos[i] = calOppScoreInfo(this.replies, this.oppColorCounts);
+				this.board.undoMove(this.undo);
+			}
+		}
 	}
 
 }
@@ -1,46 +1,64 @@
 package collecto;
 
-import java.util.HashMap;
-import java.util.Map;
-
-import utils.Colors;
-
 public interface Strategy {
 	
 	public String getName();
-	public String determineMove(Board board);
+	public int determineMove(Board board);
+
+	/**
+	 * Stop the threads of the strategy, if it has any. The strategy is not used after it is closed.
+	 */
+	default void close() {
+	}
 	
 	/**
 	 * Get all the possible Moves
 	 * @param board
-	 * @return
+	 * @return the packed moves and the balls each of them removes
+	 */
+	default MoveList getPossibleMoves(Board board) {
+		MoveList possibleMoves = new MoveList();
+		this.getPossibleMoves(board, possibleMoves);
+		return possibleMoves;
+	}
+
+	/**
+	 * Get all the possible Moves, reusing the given list.
+	 * @param board
+	 * @param possibleMoves the list to fill, it is cleared first
 	 */
-	default Map<String, Map<Colors, Integer>> getPossibleMoves(Board board) {
-		Board boardCopy;
-		Map<String, Map<Colors, Integer>> possibleMoves = new HashMap<>();
+	default void getPossibleMoves(Board board, MoveList possibleMoves) {
+		MoveUndo undo = new MoveUndo();
+		MoveUndo firstUndo = new MoveUndo();
+		Geometry geometry = board.getGeometry();
+		int pushes = geometry.getPushes();
+		possibleMoves.clear();
 		
-		for (int i = Board.MINMOVE; i <= Board.MAXMOVE; i++) {
+		// Every move is made on the board itself and taken back right after
+		for (int i = 0; i < pushes; i++) {
 			if (board.isValidSingleMove(i)) {
-				boardCopy = board.deepCopy();
-				possibleMoves.put("" + i, boardCopy.setMove(i));
-			} else {
-				continue;
+				board.applyMove(i, undo);
+				possibleMoves.add(Move.of(i), undo.getGains());
+				board.undoMove(undo);
 			}
 		}
 	
+		// No single move: every first push is made once, and every second push is tried on
+		// the board in between, where a valid second push is a valid single move
 		if (possibleMoves.isEmpty()) {
-			for (int i = Board.MINMOVE; i <= Board.MAXMOVE; i++) {
-				for (int j = Board.MINMOVE; j <= Board.MAXMOVE; j++) {
-					if (board.isValidDoubleMove(i, j)) {
-						boardCopy = board.deepCopy();
-						boardCopy.moveBalls(i);
-						possibleMoves.put(i + "~" + j, boardCopy.setMove(j));
+			for (int i = 0; i < pushes; i++) {
+				if (board.applyFirstPush(i, firstUndo)) {
+					for (int j = 0; j < pushes; j++) {
+						if (board.isValidSingleMove(j)) {
+							board.applyMove(j, undo);
+							possibleMoves.add(Move.of(geometry, i, j), undo.getGains());
+							board.undoMove(undo);
+						}
 					}
 				}
+				board.undoMove(firstUndo);
 			}
 		}
-		
-		return possibleMoves;
 	}
 	
 }
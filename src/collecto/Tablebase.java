@@ -0,0 +1,172 @@
+package collecto;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A table of solved endings, read from a file written by TablebaseGenerator.
+ * The file is mapped into memory with FileChannel.map, so a lookup reads a few pages of the
+ * file and every process that opens the same file shares one copy in the page cache.
+ * The file starts with a header of ints: MAGIC, dim, colors, each, the largest number of
+ * balls of a position and the number of records. The records follow, sorted by key:
+ * the key (long), the best move (short) and the score difference for the player to move of
+ * the rest of the game (short). A position is the same whichever game reached it: the points
+ * that are still to be made only depend on the balls on the board and on how many balls of
+ * each of those colors a player has above a multiple of 3. Which color is which does not
+ * matter either, as every color has the same number of balls and a move is made of pushes.
+ * So the key of a position is the hash of the board with its colors numbered in the order
+ * they first appear, XOR Zobrist#countKey of those remainders of the player to move, see
+ * key(Board, int[]); the remainders of the other player follow from them.
+ * Lookups only read the mapped file, so a table can be used by several threads at once.
+ */
+public class Tablebase {
+
+	static final int MAGIC = 0x43544232; // "CTB2"
+	static final int HEADER = 6 * Integer.BYTES;
+	static final int RECORD = Long.BYTES + 2 * Short.BYTES;
+
+	private final MappedByteBuffer buffer;
+	private final Geometry geometry;
+	private final int maxBalls;
+	private final int size;
+
+	/**
+	 * Map a tablebase file into memory.
+	 * @param file the file written by TablebaseGenerator
+	 * @throws IOException if the file cannot be read or is not a tablebase
+	 */
+	public Tablebase(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER) {
+				throw new IOException("Not a tablebase: " + file);
+			}
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		if (this.buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a tablebase: " + file);
+		}
+
+		int dim = this.buffer.getInt(4);
+		int colors = this.buffer.getInt(8);
+		int each = this.buffer.getInt(12);
+		this.maxBalls = this.buffer.getInt(16);
+		this.size = this.buffer.getInt(20);
+		try {
+			this.geometry = Geometry.of(dim, colors);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("The board size of the tablebase is not valid: " + file, e);
+		}
+		if (this.geometry.getEach() != each || this.buffer.capacity() != HEADER + (long) this.size * RECORD) {
+			throw new IOException("The tablebase is damaged: " + file);
+		}
+	}
+
+	/**
+	 * @return the board size of the positions in the table
+	 */
+	public Geometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * @return the largest number of balls on the board of a position in the table
+	 */
+	public int getMaxBalls() {
+		return this.maxBalls;
+	}
+
+	/**
+	 * @return the number of positions in the table
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param board the board
+	 * @param mine the balls of the player to move
+	 * @return the index of the record of the position, or -1 if the position is not in the table
+	 */
+	public int probe(Board board, ColorCounts mine) {
+		if (!board.getGeometry().equals(this.geometry) || board.getBallCount() > this.maxBalls) {
+			return -1;
+		}
+		int[] counts = new int[this.geometry.getColors() + 1];
+		for (int c = 1; c < counts.length; c++) {
+			counts[c] = mine.get(c);
+		}
+		return this.probe(key(board, counts));
+	}
+
+	/**
+	 * The key of a position, the same for positions that only differ in the colors, or in the
+	 * number of multiples of 3 of the balls of the players.
+	 * @param board the board
+	 * @param mine the balls of the player to move, indexed by color ordinal
+	 * @return the key of the position in a table
+	 */
+	static long key(Board board, int[] mine) {
+		Geometry geometry = board.getGeometry();
+		Zobrist zobrist = geometry.getZobrist();
+		int dim = geometry.getDim();
+		int[] relabel = new int[mine.length];
+		int next = 1;
+		long key = 0;
+		for (int field = 0; field < geometry.getFields(); field++) {
+			int color = board.getCell(field / dim, field % dim);
+			if (color != 0) {
+				if (relabel[color] == 0) {
+					relabel[color] = next++;
+				}
+				key ^= zobrist.key(field, relabel[color]);
+			}
+		}
+		for (int c = 1; c < mine.length; c++) {
+			if (relabel[c] != 0) {
+				key ^= zobrist.countKey(relabel[c], mine[c] % 3);
+			}
+		}
+		return key;
+	}
+
+	/**
+	 * Look up a key by binary search.
+	 * @return the index of the record with the key, or -1 if there is none
+	 */
+	int probe(long key) {
+		int low = 0;
+		int high = this.size - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			long found = this.buffer.getLong(HEADER + middle * RECORD);
+			if (found < key) {
+				low = middle + 1;
+			} else if (found > key) {
+				high = middle - 1;
+			} else {
+				return middle;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return a perfect move of the position of the record
+	 */
+	public int getMove(int index) {
+		return this.buffer.getShort(HEADER + index * RECORD + Long.BYTES);
+	}
+
+	/**
+	 * @return the points the player to move makes minus the points the other player makes
+	 * 		from the position of the record to the end of the game, if both play perfectly
+	 */
+	public int getValue(int index) {
+		return this.buffer.getShort(HEADER + index * RECORD + Long.BYTES + Short.BYTES);
+	}
+
+}
@@ -0,0 +1,202 @@
+package collecto;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import utils.MessageHandler;
+
+/**
+ * Writes a Tablebase file of solved endings.
+ * Every placement of a few balls on the board with every split of the other balls over the
+ * players is far too many positions, and most of them cannot happen in a game. Instead the
+ * generator plays games between two SmartStrategy players from seeded boards, and once a
+ * game is down to maxBalls balls it enumerates every position that can follow, for any
+ * moves of both players. A position is solved from the positions after its moves, which
+ * have fewer balls and are solved first, so the positions are solved by ball count, from
+ * the fewest balls up, and every position is solved once.
+ * A position is stored with the points that are still to be made rather than the final
+ * score, under the key of Tablebase#key(Board, int[]), so positions that games reach with
+ * other scores, other numbers of balls or the colors swapped are the same record.
+ */
+public class TablebaseGenerator {
+
+	public static final int DEFAULT_MAX_BALLS = 12;
+	public static final int DEFAULT_GAMES = 200;
+
+	private final Geometry geometry;
+	private final int maxBalls;
+
+	/* The players of the games, kept from game to game so their strategies keep their tables */
+	private final ComputerPlayer[] players = {new ComputerPlayer("A", 1), new ComputerPlayer("B", 1)};
+
+	/* Per key: the best move in the high 16 bits and the value in the low 16 bits */
+	private final Map<Long, Integer> table = new HashMap<>();
+
+	/* Per ply of the search */
+	private final MoveCache[] moveCaches;
+	private final MoveList[] moveLists;
+	private final MoveUndo[] undos;
+
+	/* The state of the search: the balls of both players (0 is the player to move at the root) and their scores */
+	private Board board;
+	private final SideCounts sides = new SideCounts();
+
+	/**
+	 * Creates a generator.
+	 * @param geometry the board size of the positions
+	 * @param maxBalls the largest number of balls on the board of a position in the table
+	 */
+	public TablebaseGenerator(Geometry geometry, int maxBalls) {
+		this.geometry = geometry;
+		this.maxBalls = maxBalls;
+		// Every move removes at least two balls
+		int plies = maxBalls / 2 + 2;
+		this.moveCaches = new MoveCache[plies];
+		this.moveLists = new MoveList[plies];
+		this.undos = new MoveUndo[plies];
+		for (int ply = 0; ply < plies; ply++) {
+			this.moveCaches[ply] = new MoveCache();
+			this.moveLists[ply] = new MoveList();
+			this.undos[ply] = new MoveUndo();
+		}
+	}
+
+	/**
+	 * @return the number of positions solved so far
+	 */
+	public int size() {
+		return this.table.size();
+	}
+
+	/**
+	 * Play a game from a seeded board and solve all the positions that can follow once it is
+	 * down to maxBalls balls.
+	 */
+	public void addGame(long seed) {
+		ComputerPlayer[] players = this.players;
+		for (ComputerPlayer player : players) {
+			player.reset();
+		}
+		Board board = new Board(this.geometry, seed);
+		int current = 0;
+		while (board.getBallCount() > this.maxBalls && board.hasAnyLegalMove()) {
+			players[current].makeMove(board, players[current].determineMove(board));
+			current = 1 - current;
+		}
+		if (board.hasAnyLegalMove()) {
+			this.addPosition(board, players[current].getColorCounts());
+		}
+	}
+
+	/**
+	 * Solve a position and all the positions that can follow.
+	 * @requires board.getBallCount() <= maxBalls
+	 * @param board the board, it is left as it is
+	 * @param mine the balls of the player to move
+	 */
+	public void addPosition(Board board, ColorCounts mine) {
+		this.board = board;
+		this.sides.start(board, mine);
+		this.solve(0);
+		this.board = null;
+	}
+
+	/**
+	 * Negamax over all the moves, without cutoffs, so the value of every position is exact.
+	 * @param ply the number of plies from the root, the side to move is ply % 2
+	 * @return the points the side to move makes minus the points the other side makes from here
+	 */
+	private int solve(int ply) {
+		int side = ply & 1;
+		long key = Tablebase.key(this.board, this.sides.counts[side]);
+		Integer known = this.table.get(key);
+		if (known != null) {
+			return (short) (int) known;
+		}
+
+		MoveList moves = this.moveLists[ply];
+		this.moveCaches[ply].getPossibleMoves(this.board, moves);
+		if (moves.isEmpty()) {
+			// The game is over, there is no move to look up
+			return 0;
+		}
+
+		int best = Integer.MIN_VALUE;
+		int bestMove = Move.NONE;
+		for (int i = 0; i < moves.size(); i++) {
+			int move = moves.get(i);
+			ColorCounts gains = moves.getGains(i);
+			int score = this.sides.scores[side];
+			this.board.makeMove(move, this.undos[ply]);
+			this.sides.addGains(side, gains, 1);
+			int value = this.sides.scores[side] - score - this.solve(ply + 1);
+			this.sides.addGains(side, gains, -1);
+			this.board.undoMove(this.undos[ply]);
+			if (value > best) {
+				best = value;
+				bestMove = move;
+			}
+		}
+
+		this.table.put(key, bestMove << 16 | best & 0xFFFF);
+		return best;
+	}
+
+	/**
+	 * Write the solved positions as a Tablebase file, sorted by key.
+	 * @param file the file, it is replaced if it exists
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(Path file) throws IOException {
+		long[] keys = new long[this.table.size()];
+		int k = 0;
+		for (long key : this.table.keySet()) {
+			keys[k++] = key;
+		}
+		Arrays.sort(keys);
+
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+			out.writeInt(Tablebase.MAGIC);
+			out.writeInt(this.geometry.getDim());
+			out.writeInt(this.geometry.getColors());
+			out.writeInt(this.geometry.getEach());
+			out.writeInt(this.maxBalls);
+			out.writeInt(keys.length);
+			for (long key : keys) {
+				int entry = this.table.get(key);
+				out.writeLong(key);
+				out.writeShort(entry >> 16);
+				out.writeShort(entry);
+			}
+		}
+	}
+
+	/* Generate a tablebase: <file> [max balls] [games] [dim colors] */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			MessageHandler.printMessage("Usage: TablebaseGenerator <file> [max balls] [games] [dim colors]");
+			return;
+		}
+		int maxBalls = args.length >= 2 ? Integer.parseInt(args[1]) : DEFAULT_MAX_BALLS;
+		int games = args.length >= 3 ? Integer.parseInt(args[2]) : DEFAULT_GAMES;
+		Geometry geometry = args.length >= 5
+				? Geometry.of(Integer.parseInt(args[3]), Integer.parseInt(args[4])) : Geometry.DEFAULT;
+
+		TablebaseGenerator generator = new TablebaseGenerator(geometry, maxBalls);
+		long start = System.nanoTime();
+		for (long seed = 0; seed < games; seed++) {
+			generator.addGame(seed);
+		}
+		generator.write(Paths.get(args[0]));
+		MessageHandler.printMessage(String.format("%d positions of at most %d balls from %d games in %.1f s, written to %s",
+				generator.size(), maxBalls, games, (System.nanoTime() - start) / 1e9, args[0]));
+	}
+
+}
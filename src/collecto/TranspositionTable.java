@@ -0,0 +1,113 @@
+package collecto;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size table of search results, indexed by the Zobrist hash of a position.
+ * The entries are stored in primitive arrays, one slot per index. A slot is replaced by
+ * a result of the same or a greater depth, or when it is left over from an earlier search.
+ */
+public class TranspositionTable {
+
+	/* The value is the exact value of the position */
+	public static final int EXACT = 0;
+	/* The value is a lower bound of the value of the position */
+	public static final int LOWER = 1;
+	/* The value is an upper bound of the value of the position */
+	public static final int UPPER = 2;
+
+	private static final byte EMPTY = -1;
+
+	private final long[] keys;
+	private final int[] values;
+	private final int[] moves;
+	private final byte[] depths;
+	private final byte[] flags;
+	private final byte[] generations;
+	private final int mask;
+
+	private byte generation;
+
+	/**
+	 * Creates a new TranspositionTable.
+	 * @requires 0 < sizeLog2 && sizeLog2 < 31
+	 * @param sizeLog2 the table holds 2^sizeLog2 entries
+	 */
+	public TranspositionTable(int sizeLog2) {
+		int size = 1 << sizeLog2;
+		this.keys = new long[size];
+		this.values = new int[size];
+		this.moves = new int[size];
+		this.depths = new byte[size];
+		this.flags = new byte[size];
+		this.generations = new byte[size];
+		this.mask = size - 1;
+		this.clear();
+	}
+
+	/**
+	 * Remove all the entries.
+	 */
+	public void clear() {
+		Arrays.fill(this.depths, EMPTY);
+		this.generation = 0;
+	}
+
+	/**
+	 * Start a new search. Entries of earlier searches are kept, but may be replaced
+	 * by any entry of the new search.
+	 */
+	public void newSearch() {
+		this.generation++;
+	}
+
+	/**
+	 * Look up a position.
+	 * @param key the hash of the position
+	 * @return the index of the entry, or -1 if the position is not in the table
+	 */
+	public int probe(long key) {
+		int index = (int) key & this.mask;
+		return this.depths[index] != EMPTY && this.keys[index] == key ? index : -1;
+	}
+
+	public int getValue(int index) {
+		return this.values[index];
+	}
+
+	public int getMove(int index) {
+		return this.moves[index];
+	}
+
+	public int getDepth(int index) {
+		return this.depths[index];
+	}
+
+	public int getFlag(int index) {
+		return this.flags[index];
+	}
+
+	/**
+	 * Store the result of a search, unless the slot holds a deeper result of the current search.
+	 * @param key the hash of the position
+	 * @param depth the depth the position has been searched to
+	 * @param value the value of the position
+	 * @param flag EXACT, LOWER or UPPER
+	 * @param move the best move found, or -1
+	 */
+	public void store(long key, int depth, int value, int flag, int move) {
+		int index = (int) key & this.mask;
+		if (this.depths[index] != EMPTY && this.keys[index] != key
+				&& this.generations[index] == this.generation && this.depths[index] > depth) {
+			return;
+		}
+
+		this.keys[index] = key;
+		this.values[index] = value;
+		this.moves[index] = move;
+		this.depths[index] = (byte) Math.min(depth, Byte.MAX_VALUE);
+		this.flags[index] = (byte) flag;
+		this.generations[index] = this.generation;
+	}
+
+}
@@ -0,0 +1,92 @@
+package collecto;
+
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The BatchKernel on the Vector API (jdk.incubator.vector): every operation of
+ * ScalarBatchKernel is done on the boards of one vector at once. The boards at the end of
+ * a batch that do not fill a vector are left to ScalarBatchKernel.
+ * This class needs --add-modules jdk.incubator.vector to compile and to run. BatchBoard
+ * only loads it by name, so without the module it falls back on ScalarBatchKernel.
+ */
+class VectorBatchKernel implements BatchKernel {
+
+	private static final VectorSpecies<Long> SPECIES = LongVector.SPECIES_PREFERRED;
+
+	@Override
+	public void push(Geometry geometry, int move, long[][] planes, long[] moved, int size) {
+		long lineMask = geometry.lineMask[move];
+		int stride = geometry.stride[move];
+		int rounds = geometry.getDim() - 1;
+
+		int end = SPECIES.loopBound(size);
+		for (int i = 0; i < end; i += SPECIES.length()) {
+			LongVector movedBalls = LongVector.zero(SPECIES);
+			for (int r = 0; r < rounds; r++) {
+				LongVector occupied = LongVector.fromArray(SPECIES, planes[0], i);
+				LongVector empty = occupied.not().and(lineMask);
+				LongVector movers = occupied.and(away(empty, stride)).and(lineMask);
+				for (int c = 0; c < planes.length; c++) {
+					LongVector plane = LongVector.fromArray(SPECIES, planes[c], i);
+					plane.and(movers.not()).or(toward(plane.and(movers), stride)).intoArray(planes[c], i);
+				}
+				movedBalls = movedBalls.and(movers.not()).or(toward(movers, stride));
+			}
+			movedBalls.intoArray(moved, i);
+		}
+		ScalarBatchKernel.push(geometry, move, planes, moved, end, size);
+	}
+
+	@Override
+	public void match(Geometry geometry, int move, long[][] planes, long[] moved, long[][] removed,
+			int size, boolean remove) {
+		long lineMask = geometry.lineMask[move];
+		int stride = geometry.stride[move];
+		int across = geometry.across[move];
+		boolean hasBefore = (geometry.acrossLines[move] & 1) != 0;
+		boolean hasAfter = (geometry.acrossLines[move] & 2) != 0;
+		boolean trailing = geometry.trailingAcross[move];
+		LongVector none = LongVector.zero(SPECIES);
+
+		int end = SPECIES.loopBound(size);
+		for (int c = 1; c < planes.length; c++) {
+			for (int i = 0; i < end; i += SPECIES.length()) {
+				LongVector balls = LongVector.fromArray(SPECIES, planes[c], i);
+				LongVector line = balls.and(lineMask);
+				LongVector mine = line.and(LongVector.fromArray(SPECIES, moved, i));
+
+				LongVector before = hasBefore ? balls.lanewise(VectorOperators.LSHL, across).and(lineMask) : none;
+				LongVector after = hasAfter ? balls.lanewise(VectorOperators.LSHR, across).and(lineMask) : none;
+				LongVector lineNext = toward(line, stride).or(away(line, stride)).and(lineMask);
+				LongVector mineNext = toward(mine, stride).or(away(mine, stride)).and(lineMask);
+				LongVector inLine = mine.and(lineNext.or(before).or(after)).or(mineNext.and(line));
+				LongVector chain = trailing ? mine : mine.and(away(mine, stride).not());
+				LongVector matched = inLine.or(chain.and(before).lanewise(VectorOperators.LSHR, across))
+						.or(chain.and(after).lanewise(VectorOperators.LSHL, across));
+
+				matched.intoArray(removed[c], i);
+				if (remove) {
+					balls.and(matched.not()).intoArray(planes[c], i);
+					LongVector.fromArray(SPECIES, planes[0], i).and(matched.not()).intoArray(planes[0], i);
+				}
+			}
+		}
+		ScalarBatchKernel.match(geometry, move, planes, moved, removed, end, size, remove);
+	}
+
+	/*
+	 * The shifts of ScalarBatchKernel.toward and away. The operator is picked with a branch, so
+	 * every lanewise call has a constant operator and compiles to one vector instruction.
+	 */
+
+	private static LongVector toward(LongVector x, int stride) {
+		return stride > 0 ? x.lanewise(VectorOperators.LSHR, stride) : x.lanewise(VectorOperators.LSHL, -stride);
+	}
+
+	private static LongVector away(LongVector x, int stride) {
+		return stride > 0 ? x.lanewise(VectorOperators.LSHL, stride) : x.lanewise(VectorOperators.LSHR, -stride);
+	}
+
+}
@@ -0,0 +1,93 @@
+package collecto;
+
+import java.util.SplittableRandom;
+
+/**
+ * Zobrist keys for Collecto positions.
+ * The hash of a board is the XOR of the keys of all its balls, so a move only has to
+ * XOR the keys of the balls it moves or removes. The keys are generated from a fixed
+ * seed, so a position gets the same hash in every run.
+ * Every Geometry has its own keys, see {@link Geometry#getZobrist()}.
+ */
+public class Zobrist {
+
+	private static final long SEED = 0x5DEECE66DL;
+
+	private final int stride; // Number of color ordinals, including EMPTY
+	private final int each;
+
+	/* Key of a ball, indexed by (field * stride + color ordinal) */
+	private final long[] ballKeys;
+
+	/* Key of the number of balls of one color a player has, indexed by (color ordinal * (each + 1) + count) */
+	private final long[] countKeys;
+
+	/**
+	 * Creates the keys of a board size.
+	 * @param fields the number of fields
+	 * @param colors the number of colors
+	 * @param each the number of balls of every color
+	 */
+	Zobrist(int fields, int colors, int each) {
+		this.stride = colors + 1;
+		this.each = each;
+		this.ballKeys = new long[fields * this.stride];
+		this.countKeys = new long[this.stride * (each + 1)];
+
+		SplittableRandom random = new SplittableRandom(SEED);
+		for (int i = 0; i < this.ballKeys.length; i++) {
+			this.ballKeys[i] = random.nextLong();
+		}
+		for (int i = 0; i < this.countKeys.length; i++) {
+			this.countKeys[i] = random.nextLong();
+		}
+	}
+
+	/**
+	 * @param field a field (x * dim + y)
+	 * @param color the ordinal of the color
+	 * @return the key of a ball of the color on the field
+	 */
+	public long key(int field, int color) {
+		return this.ballKeys[field * this.stride + color];
+	}
+
+	/**
+	 * @param color the ordinal of the color
+	 * @param word the index of the word of the bitboard, it holds fields word * 64 to word * 64 + 63
+	 * @param balls a word of a bitboard of balls of that color
+	 * @return the XOR of the keys of all the given balls
+	 */
+	public long hash(int color, int word, long balls) {
+		long hash = 0;
+		int first = word * Long.SIZE * this.stride + color;
+		while (balls != 0) {
+			hash ^= this.ballKeys[first + Long.numberOfTrailingZeros(balls) * this.stride];
+			balls &= balls - 1;
+		}
+		return hash;
+	}
+
+	/**
+	 * @param counts the balls (color) and amount a player has
+	 * @return a key of the numbers of balls, to combine with the hash of a board
+	 */
+	public long hash(ColorCounts counts) {
+		long hash = 0;
+		for (int c = 1; c < this.stride; c++) {
+			hash ^= this.countKey(c, counts.get(c));
+		}
+		return hash;
+	}
+
+	/**
+	 * @param color the ordinal of the color
+	 * @param count the number of balls of the color a player has
+	 * @return the key of the number, 0 for no balls; hash(counts) is the XOR of the keys of all colors
+	 */
+	public long countKey(int color, int count) {
+		count = Math.min(count, this.each);
+		return count > 0 ? this.countKeys[color * (this.each + 1) + count] : 0;
+	}
+
+}
@@ -0,0 +1,180 @@
+package server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import collecto.Board;
+import collecto.Geometry;
+import utils.MessageHandler;
+import utils.Rng;
+
+/**
+ * A bounded pool of boards that are generated before they are needed.
+ * A background thread keeps the pool full, so a new GameSession takes a ready board
+ * without generating one while the server is locked. When the pool is empty (more games
+ * start than the producer can keep up with) the board is generated on the spot.
+ */
+public class BoardPool {
+
+	public static final int DEFAULT_CAPACITY = 64;
+
+	/**
+	 * A generated board together with the seed it has been generated from.
+	 */
+	static final class Ready {
+		final long seed;
+		final Board board;
+
+		Ready(long seed, Board board) {
+			this.seed = seed;
+			this.board = board;
+		}
+	}
+
+	private final BlockingQueue<Ready> boards;
+	private final int capacity;
+	private final Geometry geometry;
+	private Thread producer;
+
+	/* Metrics */
+	private final AtomicLong produced = new AtomicLong();
+	private final AtomicLong producingNanos = new AtomicLong();
+	private final AtomicLong taken = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Creates a pool of DEFAULT_CAPACITY boards of the 7x7 game.
+	 */
+	public BoardPool() {
+		this(DEFAULT_CAPACITY, Geometry.DEFAULT);
+	}
+
+	/**
+	 * Creates a pool.
+	 * @requires capacity > 0
+	 * @param capacity the maximum number of ready boards
+	 * @param geometry the size of the boards and the number of colors
+	 */
+	public BoardPool(int capacity, Geometry geometry) {
+		this.capacity = capacity;
+		this.geometry = geometry;
+		this.boards = new ArrayBlockingQueue<>(capacity);
+	}
+
+	/**
+	 * Start the background thread that fills the pool, if it is not running yet.
+	 */
+	public synchronized void start() {
+		if (this.producer == null) {
+			this.producer = new Thread(this::produce, "BoardPool-producer");
+			this.producer.setDaemon(true); // Does not keep the server alive
+			this.producer.start();
+		}
+	}
+
+	/**
+	 * Stop the background thread, the boards that are ready can still be taken.
+	 */
+	public synchronized void stop() {
+		if (this.producer != null) {
+			this.producer.interrupt();
+			this.producer = null;
+		}
+	}
+
+	/**
+	 * Generate boards until the thread is interrupted, waiting while the pool is full.
+	 */
+	private void produce() {
+		try {
+			while (!Thread.currentThread().isInterrupted()) {
+				long start = System.nanoTime();
+				long seed = Rng.nextSeed();
+				Ready ready = new Ready(seed, new Board(this.geometry, seed));
+				this.producingNanos.addAndGet(System.nanoTime() - start);
+				this.produced.incrementAndGet();
+				this.boards.put(ready);
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		} catch (RuntimeException e) {
+			MessageHandler.handleError(e, "The board pool stopped generating boards");
+		}
+	}
+
+	/**
+	 * Take a ready board, this does not wait for the producer.
+	 * @return a board and its seed, generated on the spot if the pool is empty
+	 */
+	Ready take() {
+		this.taken.incrementAndGet();
+		Ready ready = this.boards.poll();
+		if (ready == null) {
+			this.misses.incrementAndGet();
+			long seed = Rng.nextSeed();
+			ready = new Ready(seed, new Board(this.geometry, seed));
+		}
+		return ready;
+	}
+
+	/**
+	 * @return the size of the boards of the pool
+	 */
+	public Geometry getGeometry() {
+		return this.geometry;
+	}
+
+	/**
+	 * @return the number of boards that are ready
+	 */
+	public int getDepth() {
+		return this.boards.size();
+	}
+
+	/**
+	 * @return the maximum number of boards that are ready
+	 */
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * @return the number of boards the producer has generated
+	 */
+	public long getProduced() {
+		return this.produced.get();
+	}
+
+	/**
+	 * @return the number of boards that have been taken, including misses
+	 */
+	public long getTaken() {
+		return this.taken.get();
+	}
+
+	/**
+	 * @return the number of boards that had to be generated on the spot because the pool was empty
+	 */
+	public long getMisses() {
+		return this.misses.get();
+	}
+
+	/**
+	 * @return the number of boards per second the producer refills the pool with while it is working
+	 */
+	public double getRefillRate() {
+		long nanos = this.producingNanos.get();
+		return nanos == 0 ? 0 : this.produced.get() * 1e9 / nanos;
+	}
+
+	/**
+	 * @return the metrics of the pool in one line
+	 */
+	public String getMetrics() {
+		return String.format("boards ready %d/%d, produced %d, taken %d, misses %d, refill %.0f boards/s",
+				this.getDepth(), this.capacity, this.getProduced(), this.getTaken(), this.getMisses(),
+				this.getRefillRate());
+	}
+
+}
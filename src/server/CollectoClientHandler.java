@@ -11,8 +11,11 @@ import java.util.Collections;
 import java.util.List;
 
 import collecto.Board;
+import collecto.Geometry;
+import collecto.Move;
 import collecto.NaiveStrategy;
 import collecto.Player;
+import collecto.Tablebase;
 import utils.Protocols;
 import utils.States;
 
@@ -31,6 +34,8 @@ public class CollectoClientHandler extends Player
 	private int score;
 	private GameSession gameSession;
 	private States state = States.NEWIN;
+	private boolean seedRequested; // The client asked for the SEED extension in HELLO
+	private NaiveStrategy hints = new NaiveStrategy(); // Keeps the move outcomes of the game between hints
 
 	public CollectoClientHandler(Socket socket, CollectoServer collectoServer) {
 		try {
@@ -67,8 +72,16 @@ public class CollectoClientHandler extends Player
 	public void handleHello(String[] command) throws IOException {
 		if (command.length == 1) {
 			sendMessage(Protocols.ERROR + Protocols.TILDE + "Received HELLO message without description!");
-		} else if (command.length == 2) {
-			sendMessage(Protocols.HELLO + Protocols.TILDE + "Collecto server!");
+		} else {
+			// The extensions the client supports follow its description
+			String hello = Protocols.HELLO + Protocols.TILDE + "Collecto server!";
+			for (int i = 2; i < command.length; i++) {
+				if (command[i].equals(Protocols.SEED)) {
+					seedRequested = true;
+					hello += Protocols.TILDE + Protocols.SEED;
+				}
+			}
+			sendMessage(hello);
 			state = States.SAYHELLO;
 		}
 	}
@@ -103,13 +116,15 @@ public class CollectoClientHandler extends Player
 
 	public void handleMove(String[] command) throws IOException {
 		if (state.equals(States.PLAYING)) {
-			if (command.length > 1) {
-				String move;
-				if (command.length == 2) {
-					move = command[1];
-				} else {
-					move = command[1] + Protocols.TILDE + command[2];
-				}
+			Geometry geometry = gameSession.getGeometry();
+			int move = Move.NONE;
+			if (command.length == 2) {
+				move = Move.parse(geometry, command[1]);
+			} else if (command.length > 2) {
+				move = Move.parse(geometry, command[1] + Protocols.TILDE + command[2]);
+			}
+
+			if (move != Move.NONE) {
 				gameSession.makeMove(move, this);
 			} else {
 				sendMessage(Protocols.ERROR + Protocols.TILDE + "invalid input");
@@ -227,6 +242,27 @@ public class CollectoClientHandler extends Player
 		out.flush();
 	}
 	
+	/**
+	 * Send a move that has been made to the player.
+	 * @param move a packed move (see Move)
+	 * @throws IOException
+	 */
+	public void sendMove(int move) throws IOException {
+		sendMessage(Protocols.MOVE + Protocols.TILDE + Move.toProtocolString(gameSession.getGeometry(), move));
+	}
+
+	/**
+	 * Tell the player that the move is invalid and give a hint.
+	 * @param move the packed move of the player
+	 * @param hint a packed move the player could make
+	 * @throws IOException
+	 */
+	public void sendInvalidMove(int move, int hint) throws IOException {
+		sendMessage(Protocols.ERROR + Protocols.TILDE + Protocols.MOVE + Protocols.TILDE
+				+ Move.toProtocolString(gameSession.getGeometry(), move) + " is invalid."
+				+ "Hint: " + Move.toProtocolString(gameSession.getGeometry(), hint));
+	}
+	
 	@Override
 	public int compareTo(CollectoClientHandler o) {
 		return this.getScore() < o.getScore() ? -1 : (this.getScore() == o.getScore() ? 0 : 1);
@@ -237,13 +273,25 @@ public class CollectoClientHandler extends Player
 		return name;
 	}
 
+	/**
+	 * The hint for a move: the move of the tablebase of the server if it has the position,
+	 * otherwise the move of a NaiveStrategy.
+	 */
 	@Override
-	public String determineMove(Board board) {
-		return new NaiveStrategy().determineMove(board);
+	public int determineMove(Board board) {
+		Tablebase tablebase = this.server.getTablebase();
+		if (tablebase != null) {
+			int index = tablebase.probe(board, this.getColorCounts());
+			if (index != -1) {
+				return tablebase.getMove(index);
+			}
+		}
+		return hints.determineMove(board);
 	}
 	
 	/**
 	 * Start the game and send a message containing the board, players' names to both players.
+	 * If the client asked for the SEED extension, the seed of the board is added to the message.
 	 * @param gameSession
 	 * @param initStr
 	 */
@@ -251,6 +299,9 @@ public class CollectoClientHandler extends Player
 		try {
 			this.gameSession = gameSession;
 			state = States.PLAYING;
+			if (seedRequested) {
+				initStr += Protocols.TILDE + Protocols.SEED + Protocols.TILDE + gameSession.getSeed();
+			}
 			sendMessage(initStr);
 		} catch (IOException e) {
 			MessageHandler.handleError(e);
@@ -7,6 +7,8 @@ import java.net.Socket;
 import java.util.ArrayList;
 import java.util.List;
 
+import collecto.Geometry;
+import collecto.Tablebase;
 import utils.Protocols;
 import utils.States;
 import utils.MessageHandler;
@@ -23,12 +25,27 @@ public class CollectoServer implements Runnable {
 	/* List of CollectoClientHandler in queue */
 	private List<CollectoClientHandler> clientsInQueue;
 
+	/* Boards generated in the background, so a game starts without generating one */
+	private BoardPool boardPool;
+
+	/* Solved endings for the hints, null when there is none */
+	private Tablebase tablebase;
+
 	/**
 	 * Constructs a new CollectoServer. Initializes the clients list
 	 */
 	public CollectoServer() {
+		this(Geometry.DEFAULT);
+	}
+
+	/**
+	 * Constructs a new CollectoServer that plays every game on boards of the given size.
+	 * @param geometry the size of the boards and the number of colors
+	 */
+	public CollectoServer(Geometry geometry) {
 		this.clients = new ArrayList<>();
 		this.clientsInQueue = new ArrayList<>();
+		this.boardPool = new BoardPool(BoardPool.DEFAULT_CAPACITY, geometry);
 	}
 
 	/**
@@ -41,6 +58,7 @@ public class CollectoServer implements Runnable {
 		try {
 			// Sets up the Collecto application
 			this.setup();
+			this.boardPool.start();
 			while (true) {
 				Socket socket = this.ssock.accept();
 				MessageHandler.printMessage("Client connected");
@@ -136,13 +154,36 @@ public class CollectoServer implements Runnable {
 		if (this.clientsInQueue.size() > 1) {
 			CollectoClientHandler player01 = this.clientsInQueue.get(0);
 			CollectoClientHandler player02 = this.clientsInQueue.get(1);
-			GameSession gameSession = new GameSession(player01, player02);
+			GameSession gameSession = new GameSession(player01, player02, this.boardPool.take());
 			gameSession.startGame();
+			MessageHandler.printMessage("Game started, " + this.boardPool.getMetrics());
 			this.clientsInQueue.remove(player01);
 			this.clientsInQueue.remove(player02);
 		}
 	}
 	
+	/**
+	 * Set the table of solved endings the hints are looked up in first.
+	 * @param tablebase the table, or null for none
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+	/**
+	 * @return the table of solved endings, or null if there is none
+	 */
+	public Tablebase getTablebase() {
+		return this.tablebase;
+	}
+
+	/**
+	 * @return the pool of boards, for example to read its metrics
+	 */
+	public BoardPool getBoardPool() {
+		return this.boardPool;
+	}
+	
 	public List<CollectoClientHandler> getClientList() {
 		return this.clients;
 	}
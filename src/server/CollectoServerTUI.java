@@ -1,7 +1,12 @@
 package server;
 
 // import java.io.PrintWriter;
+import java.io.IOException;
+import java.nio.file.Paths;
 
+import collecto.Geometry;
+import collecto.Tablebase;
+import utils.MessageHandler;
 import utils.TextIO;
 
 public class CollectoServerTUI {
@@ -12,7 +17,15 @@ public class CollectoServerTUI {
 	 * Constructs a new CollectoServerTUI. Initializes the console.
 	 */
 	public CollectoServerTUI() {
-		this.server = new CollectoServer();
+		this(Geometry.DEFAULT);
+	}
+
+	/**
+	 * Constructs a new CollectoServerTUI for a server that plays boards of the given size.
+	 * @param geometry the size of the boards and the number of colors
+	 */
+	public CollectoServerTUI(Geometry geometry) {
+		this.server = new CollectoServer(geometry);
 	}
 	
 	public void start() {
@@ -22,9 +35,31 @@ public class CollectoServerTUI {
 		this.server.run();
 	}
 
-	/* Start a new CollectoServer */
+	/**
+	 * Load a tablebase file the hints are looked up in.
+	 * @param file the file written by TablebaseGenerator
+	 */
+	public void loadTablebase(String file) {
+		try {
+			Tablebase tablebase = new Tablebase(Paths.get(file));
+			this.server.setTablebase(tablebase);
+			MessageHandler.printMessage("Tablebase loaded, " + tablebase.size() + " positions of at most "
+					+ tablebase.getMaxBalls() + " balls");
+		} catch (IOException e) {
+			MessageHandler.handleError(e, "The tablebase could not be loaded");
+		}
+	}
+
+	/* Start a new CollectoServer, optionally with the size of the boards and a tablebase: <dim> <colors> [tablebase] */
 	public static void main(String[] args) {
-		CollectoServerTUI serverTUI = new CollectoServerTUI();
+		Geometry geometry = Geometry.DEFAULT;
+		if (args.length >= 2) {
+			geometry = Geometry.of(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		}
+		CollectoServerTUI serverTUI = new CollectoServerTUI(geometry);
+		if (args.length >= 3) {
+			serverTUI.loadTablebase(args[2]);
+		}
 		serverTUI.start();
 	}
 	
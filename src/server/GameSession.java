@@ -3,7 +3,11 @@ package server;
 import java.io.IOException;
 
 import collecto.Board;
+import collecto.BoardSnapshot;
+import collecto.ColorCounts;
+import collecto.Geometry;
 import utils.Protocols;
+import utils.Rng;
 
 public class GameSession {
 	
@@ -14,6 +18,17 @@ public class GameSession {
      */
     private Board board;
 
+    /**
+     * The seed the board has been generated from, the board can be rebuilt with new Board(geometry, seed).
+     */
+    private final long seed;
+
+    /**
+     * The board after the last move, replaced after every move.
+     * Other threads read it without the lock of the session.
+     */
+    private volatile BoardSnapshot snapshot;
+
     /**
      * The 2 players of the game.
      * @invariant the length of the array equals NUMBER_PLAYERS
@@ -34,53 +49,74 @@ public class GameSession {
      * @param player02 the second player
      */
     public GameSession(CollectoClientHandler player01, CollectoClientHandler player02) {
-        board = new Board();
+        this(player01, player02, Rng.nextSeed());
+    }
+
+    /**
+     * Creates a new GameSession object that plays the board of the given seed.
+     * @requires s0 and s1 to be non-null
+     * @param player01 the first player
+     * @param player02 the second player
+     * @param seed the seed of the board
+     */
+    public GameSession(CollectoClientHandler player01, CollectoClientHandler player02, long seed) {
+        this(player01, player02, seed, new Board(seed));
+    }
+
+    /**
+     * Creates a new GameSession object that plays the board of the given seed and size.
+     * @requires s0 and s1 to be non-null
+     * @param player01 the first player
+     * @param player02 the second player
+     * @param geometry the size of the board and the number of colors
+     * @param seed the seed of the board
+     */
+    public GameSession(CollectoClientHandler player01, CollectoClientHandler player02, Geometry geometry, long seed) {
+        this(player01, player02, seed, new Board(geometry, seed));
+    }
+
+    /**
+     * Creates a new GameSession object that plays a board taken from a pool.
+     * @requires s0 and s1 to be non-null
+     * @param player01 the first player
+     * @param player02 the second player
+     * @param ready a generated board and its seed
+     */
+    GameSession(CollectoClientHandler player01, CollectoClientHandler player02, BoardPool.Ready ready) {
+        this(player01, player02, ready.seed, ready.board);
+    }
+
+    private GameSession(CollectoClientHandler player01, CollectoClientHandler player02, long seed, Board board) {
+        this.seed = seed;
+        this.board = board;
+        this.snapshot = board.snapshot();
         players = new CollectoClientHandler[NUMBER_PLAYERS];
         players[0] = player01;
         players[1] = player02;
     }
     
     /**
-     * @param move a move the player wants to make
+     * @param move a packed move the player wants to make (see Move)
      * @param player who wants to make the move
      * @throws IOException
      */
-    public synchronized void makeMove(String move, CollectoClientHandler player) throws IOException {
+    public synchronized void makeMove(int move, CollectoClientHandler player) throws IOException {
     	if (players[current].equals(player)) {
-	    	String[] moveArr = move.split("~");
-	    	boolean validMove = false;
-
-	        if (moveArr.length == 1) {
-	        	int m = board.convertMoveStr(moveArr[0]);
-
-	        	if (board.isValidSingleMove(m)) {
-	        		players[current].setColorMap(board.setMove(m));
-					validMove = true;
-	        	}
-	        } else if (moveArr.length == 2) {
-	        	int m1 = board.convertMoveStr(moveArr[0]);
-	        	int m2 = board.convertMoveStr(moveArr[1]);
-
-	        	if (board.isValidDoubleMove(m1, m2)) {
-	        		board.moveBalls(m1);
-	        		players[current].setColorMap(board.setMove(m2));
-					validMove = true;
-	        	}
-	        }
-
-	        if (validMove) {
-		        players[0].sendMessage(Protocols.MOVE + Protocols.TILDE + move);
-		        players[1].sendMessage(Protocols.MOVE + Protocols.TILDE + move);
+	        // The move is checked and made in one go, the board only changes if it is valid
+	        ColorCounts gains = board.tryApply(move);
+	        if (gains != null) {
+	        	players[current].addColorCounts(gains);
+	        	snapshot = board.snapshot();
+		        players[0].sendMove(move);
+		        players[1].sendMove(move);
 		        current = current == 0 ? 1 : 0;
-		        if (board.gameOver()) {
+		        if (!board.hasAnyLegalMove()) {
 		    		String res = getResult();
 		    		players[0].endGame(res);
 		    		players[1].endGame(res);
 		    	}
 	        } else {
-	        	players[current].sendMessage(Protocols.ERROR + Protocols.TILDE + Protocols.MOVE 
-	        			+ Protocols.TILDE + move + " is invalid."
-						+ "Hint: " + players[current].determineMove(board));
+	        	players[current].sendInvalidMove(move, players[current].determineMove(board));
 	        }
     	} else {
     		player.sendMessage(Protocols.ERROR + Protocols.TILDE + "Not your turn");
@@ -92,7 +128,7 @@ public class GameSession {
      * which player plays first is random.
      */
 	public synchronized void startGame() {
-		current = (int) (Math.random() * 2);
+		current = Rng.current().nextInt(NUMBER_PLAYERS);
 
 		CollectoClientHandler player01 = players[current];
 		CollectoClientHandler player02 = players[current == 0 ? 1 : 0];
@@ -103,6 +139,28 @@ public class GameSession {
 		player01.startGame(this, initStr);
 		player02.startGame(this, initStr);
 	}
+
+	/**
+	 * Get the board without taking the lock of the session, for example for a spectator.
+	 * @return the board after the last move
+	 */
+	public BoardSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return the size of the board of the game, moves are numbered for this geometry
+	 */
+	public Geometry getGeometry() {
+		return board.getGeometry();
+	}
+
+	/**
+	 * @return the seed the board of the game has been generated from
+	 */
+	public long getSeed() {
+		return seed;
+	}
 	
 	/**
 	 * When the game is over.
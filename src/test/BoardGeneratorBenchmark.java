@@ -0,0 +1,42 @@
+package test;
+
+import collecto.Board;
+import collecto.BoardGenerator;
+
+/**
+ * Measures how many start positions BoardGenerator and new Board() produce per second.
+ * Run it as a plain Java program: java test.BoardGeneratorBenchmark [boards]
+ */
+public class BoardGeneratorBenchmark {
+
+	public static void main(String[] args) {
+		int boards = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+		BoardGenerator generator = new BoardGenerator();
+		int[] cells = new int[Board.DIM * Board.DIM];
+
+		// Warm up, so the JIT has compiled the generator before it is measured
+		for (int i = 0; i < boards / 10; i++) {
+			generator.generate(cells);
+		}
+
+		long start = System.nanoTime();
+		for (int i = 0; i < boards; i++) {
+			generator.generate(cells);
+		}
+		report("BoardGenerator.generate", boards, System.nanoTime() - start);
+
+		start = System.nanoTime();
+		int hashes = 0;
+		for (int i = 0; i < boards; i++) {
+			hashes += new Board().hashCode(); // Use the boards, so they are not optimized away
+		}
+		report("new Board()", boards, System.nanoTime() - start);
+		System.out.println("(" + hashes + ")");
+	}
+
+	private static void report(String name, int boards, long nanos) {
+		System.out.printf("%-24s %8d boards/s, %6.2f us/board%n",
+				name, (long) (boards / (nanos / 1e9)), nanos / 1e3 / boards);
+	}
+
+}
@@ -2,17 +2,48 @@ package test;
 
 import static org.junit.jupiter.api.Assertions.*;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import collecto.AlphaBetaStrategy;
+import collecto.BatchBoard;
 import collecto.Board;
+import collecto.BoardFeatures;
+import collecto.BoardSnapshot;
+import collecto.ColorCounts;
+import collecto.ComputerPlayer;
+import collecto.EndgameSolver;
+import collecto.Geometry;
+import collecto.MctsStrategy;
+import collecto.Move;
+import collecto.MoveCache;
+import collecto.MoveList;
+import collecto.MoveUndo;
+import collecto.PackedBoard;
+import collecto.SharedTranspositionTable;
+import collecto.SmartStrategy;
+import collecto.Strategy;
+import collecto.Tablebase;
+import collecto.TablebaseGenerator;
 import utils.Colors;
 
 class BoardTest {
 	
+	/** Lists the moves with the default of Strategy, which makes every move. */
+	private static final Strategy FULL_SCAN = new Strategy() {
+		public String getName() {
+			return "Full scan";
+		}
+
+		public int determineMove(Board board) {
+			return Move.NONE;
+		}
+	};
+
 	/** Test variable for a <tt>Board</tt> object. */
     private Board board;
     private Colors[][] fields = {
@@ -52,6 +83,432 @@ class BoardTest {
     	assertFalse(board.isValidDoubleMove(3, 4));
     }
     
+    @Test
+    public void testLegalMoveMask() {
+    	board = new Board(fields);
+    	assertTrue((board.legalMoveMask() & (1 << 3)) != 0);
+    	assertTrue(board.hasAnyLegalMove());
+    }
+    
+    @Test
+    public void testApplyAndUndoMove() {
+    	board = new Board(fields);
+    	MoveUndo undo = board.applyMove(3);
+    	assertEquals(7, undo.getTotal());
+    	board.undoMove(undo);
+    	assertArrayEquals(fields, board.getFields());
+    }
+    
+    @Test
+    public void testTryApply() {
+    	board = new Board(fields);
+    	long hash = board.getHash();
+    	assertNull(board.tryApply(Move.of(3, 4))); // There are single moves
+    	assertNull(board.tryApply(0)); // Moves no ball
+    	assertNull(board.tryApply(Move.COUNT));
+    	assertArrayEquals(fields, board.getFields());
+    	assertEquals(hash, board.getHash());
+
+    	ColorCounts gains = board.tryApply(3);
+    	assertNotNull(gains);
+    	assertEquals(7, gains.getTotal());
+    	assertEquals(Colors.EMPTY, board.getField(3, 3));
+    }
+
+    @Test
+    public void testHashFollowsMoves() {
+    	board = new Board(fields);
+    	long hash = board.getHash();
+    	MoveUndo undo = board.applyMove(3);
+    	assertEquals(new Board(board.getFields()).getHash(), board.getHash());
+    	board.undoMove(undo);
+    	assertEquals(hash, board.getHash());
+    }
+
+    @Test
+    public void testInitIsValid() {
+    	board = new Board();
+    	Colors[][] generated = board.getFields();
+    	assertEquals(Colors.EMPTY, generated[Board.DIM / 2][Board.DIM / 2]);
+    	for (Colors color : Colors.values()) {
+    		if (color != Colors.EMPTY) {
+    			assertEquals(Board.EACH, board.getBallCount(color));
+    		}
+    	}
+    	for (int i = 0; i < Board.DIM; i++) {
+    		for (int j = 0; j < Board.DIM; j++) {
+    			assertFalse(generated[i][j] != Colors.EMPTY && board.hasSame(i, j));
+    		}
+    	}
+    }
+
+    @Test
+    public void testSeedRebuildsBoard() {
+    	board = new Board(42L);
+    	assertArrayEquals(board.getFields(), new Board(42L).getFields());
+    	board.init(7L);
+    	assertEquals(new Board(7L), board);
+    }
+
+    @Test
+    public void testSnapshotDoesNotChange() {
+    	board = new Board(fields);
+    	BoardSnapshot snapshot = board.snapshot();
+    	board.setMove(3);
+    	assertArrayEquals(fields, snapshot.getFields());
+    	assertEquals(new Board(fields), snapshot.toBoard());
+    	assertEquals(board.snapshot(), new Board(board.getFields()).snapshot());
+    }
+
+    @Test
+    public void testPackedBoard() {
+    	board = new Board(fields);
+    	PackedBoard packed = board.pack();
+    	assertEquals(board, packed.toBoard());
+    	assertEquals(board.getHash(), packed.toBoard().getHash());
+    	assertEquals(packed, PackedBoard.fromBytes(packed.toBytes(), 0));
+    	assertEquals(packed.hashCode(), new Board(fields).pack().hashCode());
+    	assertEquals(fields[6][6], packed.getField(6, 6));
+    	board.setMove(3);
+    	assertNotEquals(packed, board.pack());
+    }
+
+    @Test
+    public void testBiggerBoard() {
+    	Geometry geometry = Geometry.of(15, 8);
+    	assertSame(geometry, Geometry.of(15, 8));
+    	board = new Board(geometry, 42L);
+    	assertEquals(new Board(geometry, 42L), board);
+    	assertEquals(0, board.getCell(7, 7));
+    	for (int color = 1; color <= geometry.getColors(); color++) {
+    		assertEquals(geometry.getEach(), board.getBallCount(color));
+    	}
+    	assertFalse(board.gameOver());
+
+    	int move = Move.parse(geometry, "59");
+    	assertEquals(Move.NONE, Move.parse(geometry, "60"));
+    	assertEquals("3~59", Move.toProtocolString(geometry, Move.of(geometry, 3, 59)));
+    	for (int push = 0; push < board.getPushes(); push++) {
+    		if (board.isValidSingleMove(push)) {
+    			move = push;
+    		}
+    	}
+    	Board before = board.deepCopy();
+    	MoveUndo undo = board.applyMove(move);
+    	assertTrue(undo.getTotal() > 0);
+    	board.undoMove(undo);
+    	assertEquals(before, board);
+    	assertEquals(before.getHash(), board.getHash());
+    }
+
+    @Test
+    public void testTwoColorBoards() {
+    	// Only a checkerboard is valid, so the fill never succeeds and the fallback is used
+    	for (int dim = 3; dim <= 9; dim += 2) {
+    		Geometry geometry = Geometry.of(dim, 2);
+    		board = new Board(geometry, 42L);
+    		assertEquals(0, board.getCell(dim / 2, dim / 2));
+    		assertEquals(geometry.getEach(), board.getBallCount(1));
+    		assertEquals(geometry.getEach(), board.getBallCount(2));
+    		for (int x = 0; x < dim; x++) {
+    			for (int y = 0; y + 1 < dim; y++) {
+    				assertNotEquals(board.getCell(x, y), board.getCell(x, y + 1));
+    				assertNotEquals(board.getCell(y, x), board.getCell(y + 1, x));
+    			}
+    		}
+    	}
+    }
+
+    @Test
+    public void testFeaturesFollowMoves() {
+    	board = new Board(fields);
+    	BoardFeatures features = board.getFeatures();
+    	assertEquals(Board.EACH, features.getBalls(Colors.RED.ordinal()));
+    	assertEquals(Board.DIM * Board.DIM - 1, board.getBallCount());
+
+    	MoveUndo undo = board.applyMove(3);
+    	BoardFeatures counted = new Board(board.getFields()).getFeatures();
+    	for (Colors color : Colors.values()) {
+    		if (color != Colors.EMPTY) {
+    			assertEquals(counted.getBalls(color.ordinal()), features.getBalls(color.ordinal()));
+    		}
+    	}
+    	assertEquals(Board.EACH - 3, features.getBalls(Colors.BLUE.ordinal()));
+    	assertEquals(Board.EACH - 4, features.getBalls(Colors.YELLOW.ordinal()));
+    	assertEquals(Board.DIM * Board.DIM - 8, board.getBallCount());
+
+    	board.undoMove(undo);
+    	assertEquals(Board.EACH, features.getBalls(Colors.BLUE.ordinal()));
+    	assertEquals(Board.DIM * Board.DIM - 1, board.getBallCount());
+    }
+
+    @Test
+    public void testDoubleMoves() {
+    	int[] cells = new int[Board.DIM * Board.DIM];
+    	cells[0] = Colors.RED.ordinal(); // Top left
+    	cells[cells.length - 1] = Colors.RED.ordinal(); // Bottom right
+    	board = new Board(Geometry.DEFAULT, cells);
+    	long hash = board.getHash();
+    	assertFalse(board.hasSingleMove());
+
+    	MoveList moves = FULL_SCAN.getPossibleMoves(board);
+    	MoveList cached = new MoveList();
+    	new MoveCache().getPossibleMoves(board, cached);
+    	assertEquals(hash, board.getHash());
+    	assertFalse(moves.isEmpty());
+    	assertEquals(moves.size(), cached.size());
+    	for (int i = Board.MINMOVE; i <= Board.MAXMOVE; i++) {
+    		for (int j = Board.MINMOVE; j <= Board.MAXMOVE; j++) {
+    			assertEquals(board.isValidDoubleMove(i, j), moves.contains(Move.of(i, j)));
+    			assertEquals(board.isValidDoubleMove(i, j), cached.contains(Move.of(i, j)));
+    		}
+    	}
+    	assertEquals(2, moves.getGains(0).getTotal());
+    }
+
+    @Test
+    public void testMoveCacheMatchesFullScan() {
+    	MoveCache cache = new MoveCache();
+    	MoveList cached = new MoveList();
+    	board = new Board(42L);
+    	while (board.hasAnyLegalMove()) {
+    		MoveList expected = FULL_SCAN.getPossibleMoves(board);
+    		cache.getPossibleMoves(board, cached);
+    		assertEquals(expected.size(), cached.size());
+    		for (int i = 0; i < expected.size(); i++) {
+    			assertEquals(expected.get(i), cached.get(i));
+    			assertEquals(expected.getGains(i), cached.getGains(i));
+    		}
+    		board.makeMove(expected.get(0));
+    	}
+    	assertTrue(cache.getReused() > 0);
+    }
+
+    @Test
+    public void testParallelSmartStrategy() {
+    	ComputerPlayer player = new ComputerPlayer("Test", 1);
+    	SmartStrategy sequential = new SmartStrategy(player);
+    	SmartStrategy parallel = new SmartStrategy(player, 4);
+    	assertEquals(4, parallel.getParallelism());
+    	board = new Board(7L);
+    	while (board.hasAnyLegalMove()) {
+    		int move = sequential.determineMove(board);
+    		assertEquals(move, parallel.determineMove(board));
+    		player.makeMove(board, move);
+    	}
+    	parallel.setParallelism(1);
+    	assertEquals(1, parallel.getParallelism());
+    }
+
+    @Test
+    public void testAlphaBetaStrategy() {
+    	ComputerPlayer player = new ComputerPlayer("Test", 4);
+    	AlphaBetaStrategy strategy = (AlphaBetaStrategy) player.getStrategy();
+    	board = new Board(fields);
+    	int move = strategy.determineMove(board);
+    	assertTrue(board.isValidMove(move));
+    	assertArrayEquals(fields, board.getFields());
+    	assertTrue(strategy.getCompletedDepth() >= 1);
+    	assertEquals(1, strategy.getThreads());
+
+    	// Only double moves, a search of any depth finds one of them
+    	int[] cells = new int[Board.DIM * Board.DIM];
+    	cells[0] = Colors.RED.ordinal();
+    	cells[cells.length - 1] = Colors.RED.ordinal();
+    	board = new Board(Geometry.DEFAULT, cells);
+    	move = new AlphaBetaStrategy(player, 100, 1000).determineMove(board);
+    	assertTrue(Move.isDouble(move));
+    	assertTrue(board.isValidMove(move));
+    }
+
+    @Test
+    public void testLazySmpAlphaBeta() {
+    	SharedTranspositionTable table = new SharedTranspositionTable(4);
+    	table.store(42L, 3, -1000005, SharedTranspositionTable.LOWER, Move.NONE);
+    	long entry = table.probe(42L);
+    	assertEquals(-1000005, SharedTranspositionTable.getValue(entry));
+    	assertEquals(Move.NONE, SharedTranspositionTable.getMove(entry));
+    	assertEquals(3, SharedTranspositionTable.getDepth(entry));
+    	assertEquals(SharedTranspositionTable.LOWER, SharedTranspositionTable.getFlag(entry));
+    	assertEquals(0, table.probe(42L + 16)); // Same slot, other position
+
+    	ComputerPlayer player = new ComputerPlayer("Test", 4);
+    	AlphaBetaStrategy strategy = new AlphaBetaStrategy(player, 20000, 10000, 3);
+    	player.setStrategy(strategy);
+    	board = new Board(fields);
+    	int move = strategy.determineMove(board);
+    	assertTrue(board.isValidMove(move));
+    	assertArrayEquals(fields, board.getFields());
+    	assertEquals(3, strategy.getThreads());
+    	assertTrue(strategy.getCompletedDepth() >= 1);
+    	assertTrue(strategy.getNodes() >= 20000);
+    	assertTrue(strategy.getHitRate() > 0 && strategy.getHitRate() <= 1);
+    	strategy.close();
+    }
+
+    @Test
+    public void testEndgameSolver() {
+    	// Play a game down to an ending
+    	ComputerPlayer[] players = {new ComputerPlayer("A", 1), new ComputerPlayer("B", 1)};
+    	for (ComputerPlayer player : players) {
+    		((SmartStrategy) player.getStrategy()).setEndgameThreshold(0);
+    		assertEquals(0, ((SmartStrategy) player.getStrategy()).getEndgameThreshold());
+    	}
+    	EndgameSolver solver = new EndgameSolver(12);
+    	board = new Board(42L);
+    	int current = 0;
+    	while (!solver.canSolve(board)) {
+    		players[current].makeMove(board, players[current].determineMove(board));
+    		current = 1 - current;
+    	}
+    	Board before = board.deepCopy();
+    	ColorCounts mine = players[current].getColorCounts();
+    	ColorCounts theirs = players[1 - current].getColorCounts();
+    	int value = solver.solve(board, mine);
+    	int best = solver.getBestMove();
+    	assertEquals(before, board);
+
+    	// The value is the best value over the moves one ply down, and the best move has it
+    	int bestChild = Integer.MIN_VALUE;
+    	MoveList moves = FULL_SCAN.getPossibleMoves(board);
+    	for (int i = 0; i < moves.size(); i++) {
+    		board.makeMove(moves.get(i));
+    		int child = -new EndgameSolver(12).solve(board, theirs);
+    		board = before.deepCopy();
+    		bestChild = Math.max(bestChild, child);
+    		if (moves.get(i) == best) {
+    			assertEquals(value, child);
+    		}
+    	}
+    	assertEquals(value, bestChild);
+
+    	SmartStrategy strategy = (SmartStrategy) players[current].getStrategy();
+    	strategy.setEndgameThreshold(12);
+    	assertEquals(best, strategy.determineMove(board));
+    }
+
+    @Test
+    public void testTablebase() throws IOException {
+    	TablebaseGenerator generator = new TablebaseGenerator(Geometry.DEFAULT, 8);
+    	generator.addGame(7L);
+    	Path file = Files.createTempFile("collecto", ".tb");
+    	try {
+    		generator.write(file);
+    		Tablebase tablebase = new Tablebase(file);
+    		assertEquals(generator.size(), tablebase.size());
+    		assertEquals(8, tablebase.getMaxBalls());
+
+    		// The same game reaches the same ending
+    		ComputerPlayer[] players = {new ComputerPlayer("A", 1), new ComputerPlayer("B", 1)};
+    		board = new Board(Geometry.DEFAULT, 7L);
+    		int current = 0;
+    		while (board.getBallCount() > 8) {
+    			assertEquals(-1, tablebase.probe(board, players[current].getColorCounts()));
+    			players[current].makeMove(board, players[current].determineMove(board));
+    			current = 1 - current;
+    		}
+    		ColorCounts mine = players[current].getColorCounts();
+    		int index = tablebase.probe(board, mine);
+    		assertNotEquals(-1, index);
+    		assertTrue(board.isValidMove(tablebase.getMove(index)));
+    		int difference = players[current].getScore() - players[1 - current].getScore();
+    		assertEquals(new EndgameSolver(8).solve(board, mine) - difference, tablebase.getValue(index));
+
+    		// Three more balls of a color make the same position
+    		ColorCounts more = new ColorCounts(mine);
+    		more.add(Colors.RED, 3);
+    		assertEquals(index, tablebase.probe(board, more));
+
+    		SmartStrategy strategy = (SmartStrategy) players[current].getStrategy();
+    		strategy.setTablebase(tablebase);
+    		assertEquals(tablebase.getMove(index), strategy.determineMove(board));
+
+    		Files.write(file, new byte[] {1, 2, 3});
+    		assertThrows(IOException.class, () -> new Tablebase(file));
+    	} finally {
+    		Files.delete(file);
+    	}
+    }
+
+    @Test
+    public void testMctsStrategy() {
+    	ComputerPlayer player = new ComputerPlayer("Test", 5);
+    	MctsStrategy strategy = new MctsStrategy(player, 1, 2000, 10000, MctsStrategy.DEFAULT_CAPACITY);
+    	board = new Board(fields);
+    	int move = strategy.determineMove(board);
+    	assertTrue(board.isValidMove(move));
+    	assertArrayEquals(fields, board.getFields());
+    	assertEquals(2000, strategy.getPlayouts());
+
+    	// The tree of the reply of the opponent is kept
+    	player.addColorCounts(board.makeMove(move));
+    	MoveList replies = new MoveList();
+    	strategy.getPossibleMoves(board, replies);
+    	board.makeMove(replies.get(0));
+    	move = strategy.determineMove(board);
+    	assertTrue(board.isValidMove(move));
+    	assertTrue(strategy.getReusedVisits() > 0);
+
+    	// Only double moves
+    	int[] cells = new int[Board.DIM * Board.DIM];
+    	cells[0] = Colors.RED.ordinal();
+    	cells[cells.length - 1] = Colors.RED.ordinal();
+    	board = new Board(Geometry.DEFAULT, cells);
+    	MctsStrategy parallel = new MctsStrategy(player, 2, 100, 1000, 1000);
+    	move = parallel.determineMove(board);
+    	assertTrue(Move.isDouble(move));
+    	assertTrue(board.isValidMove(move));
+    	parallel.close();
+
+    	// A tree without room for the children of the root still gives a legal move
+    	board = new Board(fields);
+    	move = new MctsStrategy(player, 1, 10, 1000, 1).determineMove(board);
+    	assertTrue(board.isValidMove(move));
+    	assertEquals(1, ((MctsStrategy) player.getStrategy()).getParallelism());
+    }
+
+    @Test
+    public void testBatchBoardMatchesSetMove() {
+    	for (boolean vector : new boolean[] {false, true}) {
+    		BatchBoard batch = new BatchBoard(Geometry.DEFAULT, 67, vector);
+    		Board[] boards = new Board[batch.getCapacity()];
+    		for (int i = 0; i < boards.length; i++) {
+    			boards[i] = new Board((long) i);
+    			batch.add(boards[i]);
+    		}
+
+    		boolean[] valid = new boolean[boards.length];
+    		for (int step = 0; step < 40; step++) {
+    			int move = (step * 11) % (Board.MAXMOVE + 1);
+    			batch.findMatches(move, valid);
+    			for (int i = 0; i < boards.length; i++) {
+    				assertEquals(boards[i].isValidSingleMove(move), valid[i]);
+    			}
+
+    			batch.setMove(move);
+    			for (int i = 0; i < boards.length; i++) {
+    				assertEquals(boards[i].setMove(move), batch.getGains(i));
+    				assertEquals(boards[i], batch.toBoard(i));
+    				assertEquals(boards[i].getHash(), batch.toBoard(i).getHash());
+    			}
+    		}
+    	}
+    }
+
+    @Test
+    public void testPackedMove() {
+    	board = new Board(fields);
+    	int move = Move.parse("3~17");
+    	assertTrue(Move.isDouble(move));
+    	assertEquals(3, Move.first(move));
+    	assertEquals(17, Move.last(move));
+    	assertEquals("3~17", Move.toProtocolString(move));
+    	assertEquals(Move.NONE, Move.parse("3~28"));
+    	assertTrue(board.isValidMove(Move.parse("3")));
+    	assertFalse(board.isValidMove(move));
+    	assertEquals(7, board.makeMove(Move.of(3)).getTotal());
+    }
+
     @Test
     public void testTopIsSame() {
     	board = new Board(fields);
@@ -85,10 +542,10 @@ class BoardTest {
     @Test
     public void testSetMove() {
     	board = new Board(fields);
-    	Map<Colors, Integer> ballMap = new HashMap<>();
-    	ballMap.put(Colors.YELLOW, 2);
-    	ballMap.put(Colors.BLUE, 3);
-    	assertEquals(ballMap, board.setMove(3));
+    	ColorCounts ballCounts = new ColorCounts();
+    	ballCounts.set(Colors.YELLOW, 4);
+    	ballCounts.set(Colors.BLUE, 3);
+    	assertEquals(ballCounts, board.setMove(3));
     }
 	
 }
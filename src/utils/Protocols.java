@@ -28,6 +28,9 @@ public class Protocols {
 	public static final String RANK = "RANK";
 	public static final String AI = "AI";
 	
+	/* Extension, requested in HELLO: NEWGAME ends with ~SEED~<seed> of the board */
+	public static final String SEED = "SEED";
+	
 	public static final String ALREADYLOGGEDIN = "ALREADYLOGGEDIN";
 	
 	public static final String NEWGAME = "NEWGAME";
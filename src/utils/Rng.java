@@ -0,0 +1,28 @@
+package utils;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random numbers without a shared generator: every thread draws from its own
+ * SplittableRandom, so threads that start games at the same time do not contend.
+ * Anything that has to be reproduced, like a board, is generated from a seed drawn here.
+ */
+public class Rng {
+
+	private static final ThreadLocal<SplittableRandom> RANDOM = ThreadLocal.withInitial(SplittableRandom::new);
+
+	/**
+	 * @return the generator of the current thread, it must not be passed to another thread
+	 */
+	public static SplittableRandom current() {
+		return RANDOM.get();
+	}
+
+	/**
+	 * @return a new seed, for example to generate a board with
+	 */
+	public static long nextSeed() {
+		return RANDOM.get().nextLong();
+	}
+
+}